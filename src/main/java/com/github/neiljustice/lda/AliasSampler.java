@@ -0,0 +1,174 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.AliasTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * AliasLDA sampler, as laid out in Li, Ahmed, Ravi and Smola, 2014, "Reducing the Sampling
+ * Complexity of Topic Models".
+ * <p>
+ * The weight of topic t for word w in doc d is split into a sparse document part,
+ * n_td (beta + n_wt) / (betaSum + n_t), which is computed exactly over the topics in the
+ * document, and a dense smoothing part, alpha_t (beta + n_wt) / (betaSum + n_t), which is
+ * drawn from a per-word alias table.  The alias tables are allowed to go stale and are only
+ * rebuilt once they have been drawn from K times, so their O(K) construction cost is
+ * amortised to O(1) per draw.  A short Metropolis-Hastings chain corrects for the staleness.
+ */
+class AliasSampler implements Sampler {
+  private static final Logger LOGGER = LogManager.getLogger(AliasSampler.class);
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  private final AliasTable[] wordTables;
+  /** Draws taken from each word's alias table since it was last built. */
+  private final int[] draws;
+  private final TopicSet docTopics;
+  private final double[] docWeights;
+  private final double[] tableWeights;
+  private final int[] tableWork;
+  private long proposals;
+  private long accepted;
+
+  AliasSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+
+    wordTables = new AliasTable[lda.wordCount];
+    draws = new int[lda.wordCount];
+    docTopics = new TopicSet(topicCount);
+    docWeights = new double[topicCount];
+    tableWeights = new double[topicCount];
+    tableWork = new int[topicCount];
+  }
+
+  @Override
+  public void cycle() {
+    proposals = 0;
+    accepted = 0;
+
+    for (int doc = 0; doc < lda.docCount; doc++) {
+      final int start = corpus.docStart(doc);
+      final int end = corpus.docEnd(doc);
+
+      for (int j = start; j < end; j++) {
+        docTopics.add(corpus.topic(j));
+      }
+      for (int i = start; i < end; i++) {
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        lda.tokensInTopic[oldTopic]--;
+        lda.wordsInTopic.decrement(word, oldTopic);
+        if (lda.topicsInDoc.decrement(doc, oldTopic) == 0) {
+          docTopics.remove(oldTopic);
+        }
+
+        final int newTopic = sample(word, doc, oldTopic);
+
+        lda.tokensInTopic[newTopic]++;
+        lda.wordsInTopic.increment(word, newTopic);
+        lda.topicsInDoc.increment(doc, newTopic);
+        docTopics.add(newTopic);
+        corpus.setTopic(i, newTopic);
+      }
+      docTopics.clear();
+    }
+
+    LOGGER.info("MH acceptance rate: {}", acceptanceRate());
+  }
+
+  /**
+   * The proportion of Metropolis-Hastings proposals accepted during the last cycle.
+   */
+  double acceptanceRate() {
+    return proposals == 0 ? 0d : (double) accepted / proposals;
+  }
+
+  private int sample(int word, int doc, int current) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final AliasTable table = table(word);
+    final int docTopicCount = docTopics.size();
+
+    double docMass = 0d;
+    for (int j = 0; j < docTopicCount; j++) {
+      final int topic = docTopics.get(j);
+      docWeights[j] = lda.topicsInDoc.get(doc, topic) * (lda.wordsInTopic.get(word, topic) + lda.beta)
+          / (lda.tokensInTopic[topic] + lda.betaSum);
+      docMass += docWeights[j];
+    }
+    final double tableMass = table.mass();
+
+    for (int step = 0; step < lda.mhSteps; step++) {
+      int proposal = -1;
+      double sample = random.nextDouble() * (docMass + tableMass);
+      if (sample < docMass) {
+        for (int j = 0; j < docTopicCount; j++) {
+          proposal = docTopics.get(j);
+          sample -= docWeights[j];
+          if (sample <= 0d) {
+            break;
+          }
+        }
+      } else {
+        proposal = table.sample();
+        draws[word]++;
+      }
+
+      proposals++;
+      if (proposal == current) {
+        accepted++;
+        continue;
+      }
+
+      final double ratio = (target(word, doc, proposal) * proposal(table, word, doc, current))
+          / (target(word, doc, current) * proposal(table, word, doc, proposal));
+      if (ratio >= 1d || random.nextDouble() < ratio) {
+        current = proposal;
+        accepted++;
+      }
+    }
+
+    return current;
+  }
+
+  /**
+   * The unnormalised true conditional of the topic.
+   */
+  private double target(int word, int doc, int topic) {
+    return (lda.topicsInDoc.get(doc, topic) + lda.alpha[topic])
+        * (lda.wordsInTopic.get(word, topic) + lda.beta)
+        / (lda.tokensInTopic[topic] + lda.betaSum);
+  }
+
+  /**
+   * The unnormalised weight the topic was proposed with: exact for the document part,
+   * stale for the alias table part.
+   */
+  private double proposal(AliasTable table, int word, int doc, int topic) {
+    return lda.topicsInDoc.get(doc, topic) * (lda.wordsInTopic.get(word, topic) + lda.beta)
+        / (lda.tokensInTopic[topic] + lda.betaSum)
+        + table.weight(topic);
+  }
+
+  private AliasTable table(int word) {
+    AliasTable table = wordTables[word];
+    if (table == null) {
+      table = new AliasTable(topicCount);
+      wordTables[word] = table;
+    } else if (draws[word] < topicCount) {
+      return table;
+    }
+
+    for (int topic = 0; topic < topicCount; topic++) {
+      tableWeights[topic] = lda.alpha[topic] * (lda.wordsInTopic.get(word, topic) + lda.beta)
+          / (lda.tokensInTopic[topic] + lda.betaSum);
+    }
+    table.build(tableWeights, topicCount, tableWork);
+    draws[word] = 0;
+    return table;
+  }
+}
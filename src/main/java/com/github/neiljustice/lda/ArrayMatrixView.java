@@ -0,0 +1,38 @@
+package com.github.neiljustice.lda;
+
+/**
+ * A view of a double[][], indexed [row][col].
+ */
+final class ArrayMatrixView implements MatrixView {
+  private final double[][] array;
+  private final int cols;
+
+  ArrayMatrixView(double[][] array) {
+    this.array = array;
+    cols = array.length == 0 ? 0 : array[0].length;
+  }
+
+  @Override
+  public int rows() {
+    return array.length;
+  }
+
+  @Override
+  public int cols() {
+    return cols;
+  }
+
+  @Override
+  public double get(int row, int col) {
+    return array[row][col];
+  }
+
+  @Override
+  public double[][] toArray() {
+    final double[][] copy = new double[array.length][];
+    for (int row = 0; row < array.length; row++) {
+      copy[row] = array[row].clone();
+    }
+    return copy;
+  }
+}
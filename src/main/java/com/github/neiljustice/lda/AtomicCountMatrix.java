@@ -0,0 +1,113 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ArrayUtils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counts stored in a flat {@link AtomicIntegerArray}, so that many threads can update them
+ * at once without locks.  Reads are plain volatile reads and may be stale by the time they
+ * are used, but no update is lost.
+ * <p>
+ * Only {@link SamplerType#HOGWILD} needs this; {@link #narrow(long)} turns the counts back
+ * into the plain storage {@link CountMatrix#create(int, int, long)} would choose.
+ */
+class AtomicCountMatrix extends CountMatrix {
+  /** May be longer than rows * cols. */
+  private AtomicIntegerArray counts;
+
+  AtomicCountMatrix(int rows, int cols) {
+    super(rows, cols);
+    counts = new AtomicIntegerArray(denseLength(rows, cols));
+  }
+
+  /**
+   * An atomic copy of the given matrix, with extra rows of zero counts.
+   */
+  static AtomicCountMatrix copyOf(CountMatrix matrix, int extraRows) {
+    final AtomicCountMatrix copy = new AtomicCountMatrix(matrix.rows + extraRows, matrix.cols);
+    for (int row = 0; row < matrix.rows; row++) {
+      for (int e = 0; e < matrix.entryCount(row); e++) {
+        copy.set(row, matrix.entryCol(row, e), matrix.entryValue(row, e));
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * A copy of this matrix in the narrowest plain storage which can hold maxCount.
+   */
+  CountMatrix narrow(long maxCount) {
+    final CountMatrix copy = CountMatrix.create(rows, cols, maxCount);
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < cols; col++) {
+        copy.set(row, col, get(row, col));
+      }
+    }
+    return copy;
+  }
+
+  @Override
+  int get(int row, int col) {
+    return counts.get(row * cols + col);
+  }
+
+  @Override
+  void set(int row, int col, int value) {
+    counts.set(row * cols + col, value);
+  }
+
+  @Override
+  int increment(int row, int col) {
+    return counts.incrementAndGet(row * cols + col);
+  }
+
+  @Override
+  int decrement(int row, int col) {
+    return counts.decrementAndGet(row * cols + col);
+  }
+
+  @Override
+  void add(int row, int col, int delta) {
+    counts.addAndGet(row * cols + col, delta);
+  }
+
+  @Override
+  void clear() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  /**
+   * An atomic array cannot grow, so once the spare room is used up the counts are moved to a
+   * larger one, which is then grown into in place.
+   */
+  @Override
+  CountMatrix grow(int[] runs, long maxCount) {
+    final int length = denseLength(rows + runs.length, cols);
+    if (length > counts.length()) {
+      final AtomicIntegerArray larger = new AtomicIntegerArray(ArrayUtils.grownLength(counts.length(), length));
+      for (int i = 0; i < rows * cols; i++) {
+        larger.set(i, counts.get(i));
+      }
+      counts = larger;
+    }
+    rows += runs.length;
+    return this;
+  }
+
+  @Override
+  CountMatrix emptyCopy() {
+    return new AtomicCountMatrix(rows, cols);
+  }
+
+  @Override
+  void copyRows(CountMatrix other, int startRow, int endRow) {
+    for (int row = startRow; row < endRow; row++) {
+      for (int col = 0; col < cols; col++) {
+        set(row, col, other.get(row, col));
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.neiljustice.lda;
+
+import java.util.Arrays;
+
+/**
+ * The tokens of a corpus grouped into a parts x parts grid of (doc block, word block) cells.
+ * Doc blocks are contiguous ranges of documents and word blocks are sets of words, each
+ * balanced by token count.  Within a cell the tokens stay in corpus order.
+ */
+class BlockIndex {
+  private final int parts;
+  /** Doc block b is docs [docBounds[b], docBounds[b + 1]). */
+  private final int[] docBounds;
+  /** Cell (d, w) holds tokens[offsets[d * parts + w] .. offsets[d * parts + w + 1]). */
+  private final int[] offsets;
+  private final int[] tokens;
+
+  BlockIndex(Corpus corpus, int parts) {
+    this.parts = parts;
+
+    docBounds = corpus.partitionDocs(parts);
+    final int[] wordBlocks = wordBlocks(corpus, parts);
+    final int cells = parts * parts;
+
+    offsets = new int[cells + 1];
+    for (int block = 0; block < parts; block++) {
+      for (int i = corpus.docStart(docBounds[block]); i < corpus.docStart(docBounds[block + 1]); i++) {
+        offsets[block * parts + wordBlocks[corpus.word(i)] + 1]++;
+      }
+    }
+    for (int cell = 0; cell < cells; cell++) {
+      offsets[cell + 1] += offsets[cell];
+    }
+
+    final int[] next = Arrays.copyOf(offsets, cells);
+    tokens = new int[corpus.size()];
+    for (int block = 0; block < parts; block++) {
+      for (int i = corpus.docStart(docBounds[block]); i < corpus.docStart(docBounds[block + 1]); i++) {
+        tokens[next[block * parts + wordBlocks[corpus.word(i)]]++] = i;
+      }
+    }
+  }
+
+  /**
+   * Assign each word, most frequent first, to the word block with the fewest tokens so far.
+   */
+  private static int[] wordBlocks(Corpus corpus, int parts) {
+    final int wordCount = corpus.wordCount();
+    final int[] wordOffsets = corpus.wordOffsets();
+    final long[] packed = new long[wordCount];
+    for (int word = 0; word < wordCount; word++) {
+      final long frequency = wordOffsets[word + 1] - wordOffsets[word];
+      packed[word] = (frequency << 32) | word;
+    }
+    Arrays.sort(packed);
+
+    final int[] blocks = new int[wordCount];
+    final long[] load = new long[parts];
+    for (int j = wordCount - 1; j >= 0; j--) {
+      int lightest = 0;
+      for (int p = 1; p < parts; p++) {
+        if (load[p] < load[lightest]) {
+          lightest = p;
+        }
+      }
+      blocks[(int) packed[j]] = lightest;
+      load[lightest] += packed[j] >>> 32;
+    }
+    return blocks;
+  }
+
+  int parts() {
+    return parts;
+  }
+
+  /**
+   * The first document in the doc block.
+   */
+  int firstDoc(int docBlock) {
+    return docBounds[docBlock];
+  }
+
+  int start(int docBlock, int wordBlock) {
+    return offsets[docBlock * parts + wordBlock];
+  }
+
+  int end(int docBlock, int wordBlock) {
+    return offsets[docBlock * parts + wordBlock + 1];
+  }
+
+  int token(int position) {
+    return tokens[position];
+  }
+}
@@ -0,0 +1,135 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Block-partitioned parallel Gibbs sampler, as laid out in Yan, Xu and Qi, 2009, "Parallel
+ * Inference for Latent Dirichlet Allocation on Graphics Processing Units".
+ * <p>
+ * With P threads, the documents and the vocabulary are each split into P blocks, balanced
+ * by token count (see {@link BlockIndex}).  A cycle is P rounds; in round r, worker i samples
+ * the tokens in doc block i and word block (i + r) mod P.  No two workers in a round share a
+ * row of wordsInTopic or of topicsInDoc, so both are updated in place without locks,
+ * and every token is visited exactly once per cycle.
+ * <p>
+ * tokensInTopic is the only count every block touches.  Each worker samples against its own
+ * copy, and the copies' changes are summed back at the end of every round, so it is never
+ * more than one round stale.
+ */
+class BlockParallelSampler implements Sampler {
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  private ExecutorService executor;
+  private BlockIndex index;
+  private List<Worker> workers;
+
+  BlockParallelSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+  }
+
+  @Override
+  public void cycle() {
+    if (index == null || index.parts() != lda.parallelism) {
+      init(lda.parallelism);
+    }
+
+    final int parts = index.parts();
+    for (int round = 0; round < parts; round++) {
+      for (int p = 0; p < parts; p++) {
+        workers.get(p).wordBlock = (p + round) % parts;
+      }
+      ThreadUtils.invokeAll(executor, workers);
+      mergeTokensInTopic();
+    }
+  }
+
+  private void init(int threads) {
+    if (executor != null) {
+      executor.shutdown();
+    }
+    executor = ThreadUtils.newDaemonPool(threads, "lda-sampler");
+    index = corpus.blockIndex(threads);
+
+    workers = new ArrayList<>(threads);
+    for (int p = 0; p < threads; p++) {
+      workers.add(new Worker(p));
+    }
+  }
+
+  private void mergeTokensInTopic() {
+    for (int topic = 0; topic < topicCount; topic++) {
+      int sum = lda.tokensInTopic[topic];
+      for (Worker worker : workers) {
+        sum += worker.tokensInTopic[topic] - lda.tokensInTopic[topic];
+      }
+      lda.tokensInTopic[topic] = sum;
+    }
+  }
+
+  private final class Worker implements Callable<Void> {
+    private final int docBlock;
+    private final int[] tokensInTopic;
+    private final double[] probabilities;
+    private final DocTopicRow docRow;
+    private int wordBlock;
+
+    Worker(int docBlock) {
+      this.docBlock = docBlock;
+      tokensInTopic = new int[topicCount];
+      probabilities = new double[topicCount];
+      docRow = new DocTopicRow(lda.topicsInDoc, topicCount);
+    }
+
+    @Override
+    public Void call() {
+      System.arraycopy(lda.tokensInTopic, 0, tokensInTopic, 0, topicCount);
+
+      // the cell's tokens are in corpus order, so their docs only ever move forwards
+      int doc = index.firstDoc(docBlock);
+      final int end = index.end(docBlock, wordBlock);
+      for (int p = index.start(docBlock, wordBlock); p < end; p++) {
+        final int i = index.token(p);
+        while (corpus.docEnd(doc) <= i) {
+          doc++;
+        }
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        docRow.load(doc);
+        tokensInTopic[oldTopic]--;
+        lda.wordsInTopic.decrement(word, oldTopic);
+        docRow.decrement(oldTopic);
+
+        final int newTopic = sample(word);
+
+        tokensInTopic[newTopic]++;
+        lda.wordsInTopic.increment(word, newTopic);
+        docRow.increment(newTopic);
+        corpus.setTopic(i, newTopic);
+      }
+      docRow.clear();
+      return null;
+    }
+
+    private int sample(int word) {
+      double sum = 0;
+
+      for (int topic = 0; topic < topicCount; topic++) {
+        probabilities[topic] = (docRow.counts[topic] + lda.alpha[topic])
+            * ((lda.wordsInTopic.get(word, topic) + lda.beta)
+            / (tokensInTopic[topic] + lda.betaSum));
+        sum += probabilities[topic];
+      }
+
+      return Probability.sampleFromMultinomialDist(probabilities, sum);
+    }
+  }
+}
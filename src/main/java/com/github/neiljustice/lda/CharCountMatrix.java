@@ -0,0 +1,73 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ArrayUtils;
+
+import java.util.Arrays;
+
+/**
+ * Counts stored in a flat {@code char[]}, for when no count can exceed 65535.  Half the size of
+ * {@link IntCountMatrix}, so twice as many rows fit in cache.
+ */
+class CharCountMatrix extends CountMatrix {
+  /** May be longer than rows * cols. */
+  private char[] counts;
+
+  CharCountMatrix(int rows, int cols) {
+    super(rows, cols);
+    counts = new char[denseLength(rows, cols)];
+  }
+
+  @Override
+  int get(int row, int col) {
+    return counts[row * cols + col];
+  }
+
+  @Override
+  void set(int row, int col, int value) {
+    counts[row * cols + col] = (char) value;
+  }
+
+  @Override
+  int increment(int row, int col) {
+    return ++counts[row * cols + col];
+  }
+
+  @Override
+  int decrement(int row, int col) {
+    return --counts[row * cols + col];
+  }
+
+  @Override
+  void add(int row, int col, int delta) {
+    counts[row * cols + col] += (char) delta;
+  }
+
+  @Override
+  void clear() {
+    Arrays.fill(counts, (char) 0);
+  }
+
+  @Override
+  CountMatrix grow(int[] runs, long maxCount) {
+    if (maxCount > Character.MAX_VALUE) {
+      return widen(runs.length);
+    }
+    final int length = denseLength(rows + runs.length, cols);
+    if (length > counts.length) {
+      counts = Arrays.copyOf(counts, ArrayUtils.grownLength(counts.length, length));
+    }
+    rows += runs.length;
+    return this;
+  }
+
+  @Override
+  CountMatrix emptyCopy() {
+    return new CharCountMatrix(rows, cols);
+  }
+
+  @Override
+  void copyRows(CountMatrix other, int startRow, int endRow) {
+    final char[] source = ((CharCountMatrix) other).counts;
+    System.arraycopy(source, startRow * cols, counts, startRow * cols, (endRow - startRow) * cols);
+  }
+}
@@ -0,0 +1,446 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.FileUtils;
+import com.github.neiljustice.lda.util.MappedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A corpus stored in a directory as a series of chunks, each a run of whole documents, which
+ * are read onto the heap one at a time by {@link OutOfCoreLDA}.  Nothing per document or per
+ * token is held while a chunk is not in use, so the corpus can be far larger than the heap;
+ * only the dictionary and a little per chunk are kept.
+ * <p>
+ * Layout, the chunks little-endian:
+ * <pre>
+ *   header          version, chunkCount, docCount and wordCount as ints, tokenCount and the
+ *                   most tokens of any one word as longs, then topicCount (0 until trained)
+ *                   and hashBits (0 unless the words are hashed) as ints
+ *   dictionary      one UTF string per word
+ *   chunk-N         docCount, tokenCount and the width of its word ids as ints, then the
+ *                   docCount + 1 offsets of its documents as ints, then its word ids
+ *   chunk-N.topics  the topic of each of its tokens, 1, 2 or 4 bytes wide as topicCount needs
+ * </pre>
+ * Each chunk's word ids are as narrow as the largest id in it allows.  A chunk's topics are
+ * written beside it and moved over it, so they are always those of one whole pass.
+ */
+public final class ChunkedCorpus {
+  private static final int VERSION = 2;
+  /** Version 1 headers have no hashBits. */
+  private static final int V1 = 1;
+  private static final String HEADER = "header";
+  private static final String DICTIONARY = "dictionary";
+  private static final String CHUNK = "chunk-";
+  private static final String TOPICS = ".topics";
+  private static final int CHUNK_HEADER_BYTES = 3 * 4;
+  /** Tokens per chunk unless otherwise given: 16MB of ids and topics at most. */
+  public static final int DEFAULT_CHUNK_TOKENS = 1 << 21;
+
+  private final Path dir;
+  private final Vocabulary dictionary;
+  private final int chunkCount;
+  private final int docCount;
+  private final long tokenCount;
+  private final long maxWordRun;
+  private volatile int topicCount;
+
+  private ChunkedCorpus(Path dir, Vocabulary dictionary, int chunkCount,
+                        int docCount, long tokenCount, long maxWordRun, int topicCount) {
+    this.dir = dir;
+    this.dictionary = dictionary;
+    this.chunkCount = chunkCount;
+    this.docCount = docCount;
+    this.tokenCount = tokenCount;
+    this.maxWordRun = maxWordRun;
+    this.topicCount = topicCount;
+  }
+
+  /**
+   * Write a corpus to a directory in chunks of about chunkTokens tokens.  Its topic
+   * assignments are not kept.
+   */
+  public static ChunkedCorpus write(Corpus corpus, Path dir, int chunkTokens) {
+    // copied by id, as the words of a hashed dictionary are bucket labels rather than words
+    try (Writer writer = new Writer(dir, chunkTokens, null, corpus.dictionary())) {
+      for (int doc = 0; doc < corpus.docCount(); doc++) {
+        writer.add(corpus, doc);
+      }
+    }
+    return open(dir);
+  }
+
+  /**
+   * Open a corpus written by {@link Writer} or {@link #write(Corpus, Path, int)}, along with
+   * the topic assignments it held when last trained.
+   */
+  public static ChunkedCorpus open(Path dir) {
+    try (DataInputStream header = input(dir.resolve(HEADER))) {
+      final int version = header.readInt();
+      if (version != VERSION && version != V1) {
+        throw new IllegalStateException("Unknown corpus version " + version + " in " + dir);
+      }
+      final int chunkCount = header.readInt();
+      final int docCount = header.readInt();
+      final int wordCount = header.readInt();
+      final long tokenCount = header.readLong();
+      final long maxWordRun = header.readLong();
+      final int topicCount = header.readInt();
+      final int hashBits = version == V1 ? 0 : header.readInt();
+      final Vocabulary dictionary = MappedCorpus.readDictionary(dir.resolve(DICTIONARY), wordCount, hashBits);
+      return new ChunkedCorpus(dir, dictionary, chunkCount, docCount, tokenCount, maxWordRun, topicCount);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public Vocabulary dictionary() {
+    return dictionary;
+  }
+
+  public int chunkCount() {
+    return chunkCount;
+  }
+
+  public int docCount() {
+    return docCount;
+  }
+
+  public int wordCount() {
+    return dictionary.size();
+  }
+
+  public long size() {
+    return tokenCount;
+  }
+
+  /**
+   * The most tokens of any one word, which bounds every word-topic count.
+   */
+  long maxWordRun() {
+    return maxWordRun;
+  }
+
+  /**
+   * The number of topics the stored assignments are for, or 0 if there are none.
+   */
+  public int topicCount() {
+    return topicCount;
+  }
+
+  /**
+   * Record that every chunk now holds assignments for topicCount topics.
+   */
+  void setTopicCount(int topicCount) {
+    this.topicCount = topicCount;
+    writeHeader(dir, chunkCount, docCount, wordCount(), tokenCount, maxWordRun, topicCount,
+        dictionary.hashBits());
+  }
+
+  /**
+   * Read a chunk onto the heap, with its topics if it has any.
+   */
+  Chunk read(int index) {
+    try {
+      final ByteBuffer in = readFully(chunkFile(index));
+      final int docs = in.getInt();
+      final int tokens = in.getInt();
+      final int width = in.getInt();
+      final int[] docOffsets = new int[docs + 1];
+      in.asIntBuffer().get(docOffsets);
+      in.position(CHUNK_HEADER_BYTES + 4 * docOffsets.length);
+      final int[] words = new int[tokens];
+      decode(in, width, words);
+      long bytes = in.capacity();
+
+      int[] topics = null;
+      if (topicCount > 0) {
+        final ByteBuffer topicsIn = readFully(topicsFile(index));
+        topics = new int[tokens];
+        decode(topicsIn, MappedIntArray.widthFor(topicCount - 1), topics);
+        bytes += topicsIn.capacity();
+      }
+      return new Chunk(index, docOffsets, words, topics, bytes);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Write a chunk's topics, as assignments for topicCount topics.
+   *
+   * @return the number of bytes written.
+   */
+  long writeTopics(Chunk chunk, int topicCount) {
+    final int width = MappedIntArray.widthFor(topicCount - 1);
+    final ByteBuffer out = ByteBuffer.allocate(width * chunk.topics.length).order(ByteOrder.LITTLE_ENDIAN);
+    encode(chunk.topics, width, out);
+    final Path file = topicsFile(chunk.index);
+    final Path next = file.resolveSibling(file.getFileName() + ".next");
+    writeFully(next, out);
+    FileUtils.moveAtomically(next, file);
+    return out.capacity();
+  }
+
+  private Path chunkFile(int index) {
+    return dir.resolve(CHUNK + index);
+  }
+
+  private Path topicsFile(int index) {
+    return dir.resolve(CHUNK + index + TOPICS);
+  }
+
+  private static void decode(ByteBuffer in, int width, int[] values) {
+    if (width == 4) {
+      in.asIntBuffer().get(values);
+    } else if (width == 2) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = in.getChar();
+      }
+    } else {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = in.get() & 0xFF;
+      }
+    }
+  }
+
+  private static void encode(int[] values, int width, ByteBuffer out) {
+    if (width == 4) {
+      out.asIntBuffer().put(values);
+    } else if (width == 2) {
+      for (int value : values) {
+        out.putChar((char) value);
+      }
+    } else {
+      for (int value : values) {
+        out.put((byte) value);
+      }
+    }
+  }
+
+  private static ByteBuffer readFully(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalStateException(file + " is too large to be a chunk");
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new EOFException(file.toString());
+        }
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  private static void writeFully(Path file, ByteBuffer buffer) {
+    buffer.position(buffer.capacity());
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      FileUtils.drain(channel, buffer);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void writeHeader(Path dir, int chunkCount, int docCount, int wordCount,
+                                  long tokenCount, long maxWordRun, int topicCount, int hashBits) {
+    final Path next = dir.resolve(HEADER + ".next");
+    try (DataOutputStream out = output(next)) {
+      out.writeInt(VERSION);
+      out.writeInt(chunkCount);
+      out.writeInt(docCount);
+      out.writeInt(wordCount);
+      out.writeLong(tokenCount);
+      out.writeLong(maxWordRun);
+      out.writeInt(topicCount);
+      out.writeInt(hashBits);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    FileUtils.moveAtomically(next, dir.resolve(HEADER));
+  }
+
+  private static DataInputStream input(Path file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+  }
+
+  private static DataOutputStream output(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+  }
+
+  /**
+   * A chunk read onto the heap.  Document offsets are relative to the chunk.
+   */
+  static final class Chunk {
+    final int index;
+    final int[] docOffsets;
+    final int[] words;
+    /** Null if the corpus has not been trained yet. */
+    int[] topics;
+    /** The bytes read to load the chunk. */
+    final long bytes;
+
+    Chunk(int index, int[] docOffsets, int[] words, int[] topics, long bytes) {
+      this.index = index;
+      this.docOffsets = docOffsets;
+      this.words = words;
+      this.topics = topics;
+      this.bytes = bytes;
+    }
+
+    int docCount() {
+      return docOffsets.length - 1;
+    }
+  }
+
+  /**
+   * Writes a corpus to a directory one document at a time, cutting a chunk whenever the
+   * documents buffered reach the chunk size, so only the dictionary and one chunk are ever
+   * held.  The corpus is complete once the writer is closed, and can then be opened with
+   * {@link ChunkedCorpus#open(Path)}.
+   */
+  public static final class Writer implements Closeable {
+    private final Path dir;
+    private final int chunkTokens;
+    /** Null if copying a corpus by id. */
+    private final Vocabulary.Builder dictionary;
+    /** The dictionary of the corpus being copied, or null if words are added as strings. */
+    private final Vocabulary copied;
+    /** Tokens of each word so far. */
+    private final TLongArrayList wordRuns = new TLongArrayList();
+    private final TIntArrayList docOffsets = new TIntArrayList();
+    private final TIntArrayList words = new TIntArrayList();
+    private int maxWord;
+    private int chunkCount;
+    private int docCount;
+    private long tokenCount;
+    private boolean closed;
+
+    public Writer(Path dir) {
+      this(dir, DEFAULT_CHUNK_TOKENS);
+    }
+
+    public Writer(Path dir, int chunkTokens) {
+      this(dir, chunkTokens, new Vocabulary.Builder());
+    }
+
+    /**
+     * @param dictionary assigns the words their ids, such as a builder from
+     *                   {@link Vocabulary.Builder#hashing(int, int)}.
+     */
+    public Writer(Path dir, int chunkTokens, Vocabulary.Builder dictionary) {
+      this(dir, chunkTokens, dictionary, null);
+    }
+
+    private Writer(Path dir, int chunkTokens, Vocabulary.Builder dictionary, Vocabulary copied) {
+      if (chunkTokens <= 0) {
+        throw new IllegalArgumentException("Chunks must hold at least one token");
+      }
+      this.dir = dir;
+      this.chunkTokens = chunkTokens;
+      this.dictionary = dictionary;
+      this.copied = copied;
+      try {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(HEADER));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      docOffsets.add(0);
+    }
+
+    public void add(List<String> document) {
+      for (String token : document) {
+        put(dictionary.add(token));
+      }
+      endDocument(document.size());
+    }
+
+    private void add(Corpus corpus, int doc) {
+      for (int i = corpus.docStart(doc); i < corpus.docEnd(doc); i++) {
+        put(corpus.word(i));
+      }
+      endDocument(corpus.docEnd(doc) - corpus.docStart(doc));
+    }
+
+    private void put(int word) {
+      // ids arrive in any order when hashed or copied
+      while (wordRuns.size() <= word) {
+        wordRuns.add(0);
+      }
+      wordRuns.setQuick(word, wordRuns.getQuick(word) + 1);
+      maxWord = Math.max(maxWord, word);
+      words.add(word);
+    }
+
+    private void endDocument(int length) {
+      docOffsets.add(words.size());
+      docCount++;
+      tokenCount += length;
+      if (words.size() >= chunkTokens) {
+        writeChunk();
+      }
+    }
+
+    private void writeChunk() {
+      final int width = MappedIntArray.widthFor(maxWord);
+      final ByteBuffer out = ByteBuffer.allocate(CHUNK_HEADER_BYTES + 4 * docOffsets.size()
+          + width * words.size()).order(ByteOrder.LITTLE_ENDIAN);
+      out.putInt(docOffsets.size() - 1);
+      out.putInt(words.size());
+      out.putInt(width);
+      for (int doc = 0; doc < docOffsets.size(); doc++) {
+        out.putInt(docOffsets.getQuick(doc));
+      }
+      encode(words.toArray(), width, out);
+      try {
+        Files.deleteIfExists(dir.resolve(CHUNK + chunkCount + TOPICS));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      writeFully(dir.resolve(CHUNK + chunkCount), out);
+      chunkCount++;
+      docOffsets.resetQuick();
+      docOffsets.add(0);
+      words.resetQuick();
+      maxWord = 0;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (!words.isEmpty() || docOffsets.size() > 1) {
+        writeChunk();
+      }
+      final Vocabulary vocabulary = copied == null ? dictionary.build() : copied;
+      try {
+        MappedCorpus.writeDictionary(dir.resolve(DICTIONARY), vocabulary);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      // written last, so a corpus whose writer did not finish cannot be opened
+      writeHeader(dir, chunkCount, docCount, vocabulary.size(), tokenCount,
+          wordRuns.isEmpty() ? 0 : wordRuns.max(), 0, vocabulary.hashBits());
+    }
+  }
+}
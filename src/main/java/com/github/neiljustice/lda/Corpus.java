@@ -1,82 +1,263 @@
 package com.github.neiljustice.lda;
 
-import com.github.neiljustice.lda.util.BiDirectionalLookup;
-import gnu.trove.list.array.TIntArrayList;
+import com.github.neiljustice.lda.util.ArrayUtils;
+import com.github.neiljustice.lda.util.IntArray;
+import com.github.neiljustice.lda.util.PackedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * The tokens of a set of documents, as word ids, along with each token's topic assignment.
+ * <p>
+ * Documents are stored one after the other, in compressed sparse row form: the tokens of doc
+ * d are [docStart(d), docEnd(d)).  Word ids are bit-packed to the fewest bits the vocabulary
+ * allows, and topics take a byte, char or int once the number of topics is known, so for up
+ * to 256 topics a token takes log2(V) bits plus a byte rather than three ints.
+ */
 public class Corpus {
-  private final TIntArrayList words;
-  private final TIntArrayList docs;
-  private final TIntArrayList topics;
-  private final int docCount;
-  private final int wordCount;
-  private final BiDirectionalLookup<String> dictionary;
+  /** May be longer than size(), to leave room for documents to be appended. */
+  private IntArray words;
+  /** Null until the number of topics is known.  May be longer than size(). */
+  private TopicArray topics;
+  private int topicCount;
+  /** Tokens of doc d are [docOffsets[d], docOffsets[d + 1]).  May be longer than docCount + 1. */
+  private int[] docOffsets;
+  private int docCount;
+  private int wordCount;
+  /** Shared with any copies, since it is immutable; replaced when words are appended. */
+  private Vocabulary dictionary;
+  /** Tokens of word w are tokensByWord[wordOffsets[w] .. wordOffsets[w + 1]).  Each built on first use. */
+  private int[] wordOffsets;
+  private int[] tokensByWord;
+  private BlockIndex blockIndex;
 
   public Corpus(List<List<String>> processedDocuments) {
-    dictionary = new BiDirectionalLookup<>();
+    this(processedDocuments, new Vocabulary.Builder());
+  }
 
-    words = new TIntArrayList();
-    docs = new TIntArrayList();
-    topics = new TIntArrayList();
+  /**
+   * A corpus whose word ids are assigned by the given builder, such as one from
+   * {@link Vocabulary.Builder#hashing(int, int)}, which fixes the number of words, and so
+   * the memory the samplers need per word, however many distinct words there are.
+   */
+  public Corpus(List<List<String>> processedDocuments, Vocabulary.Builder builder) {
+    docCount = processedDocuments.size();
+    docOffsets = new int[docCount + 1];
 
+    // the word ids can only be packed once the size of the vocabulary is known
     int doc = 0;
-
     for (List<String> document : processedDocuments) {
       for (String token : document) {
-        final int wordIndex = dictionary.add(token);
-        add(wordIndex, doc);
+        builder.add(token);
       }
+      docOffsets[doc + 1] = Math.addExact(docOffsets[doc], document.size());
       doc++;
     }
-
-    docCount = processedDocuments.size();
+    dictionary = builder.build();
     wordCount = dictionary.size();
 
+    final PackedIntArray packed = new PackedIntArray(docOffsets[docCount], Math.max(0, wordCount - 1));
+    int i = 0;
+    for (List<String> document : processedDocuments) {
+      for (String token : document) {
+        packed.set(i++, dictionary.getIndex(token));
+      }
+    }
+    words = packed;
   }
 
+  /**
+   * A copy held on the heap, whatever the storage of the original.  The dictionary is shared.
+   */
   public Corpus(Corpus other) {
-    dictionary = new BiDirectionalLookup<>();
+    dictionary = other.dictionary;
+    docCount = other.docCount;
+    wordCount = other.wordCount;
+    docOffsets = other.docOffsets.clone();
 
-    words = new TIntArrayList(other.words);
-    docs = new TIntArrayList(other.docs);
-    topics = new TIntArrayList(other.topics);
+    final PackedIntArray packed = new PackedIntArray(size(), Math.max(0, wordCount - 1));
+    for (int i = 0; i < size(); i++) {
+      packed.set(i, other.word(i));
+    }
+    words = packed;
+    if (other.topicCount() > 0) {
+      allocateTopics(other.topicCount());
+      for (int i = 0; i < size(); i++) {
+        topics.set(i, other.topic(i));
+      }
+    }
+  }
 
-    for (int i = 0; i < other.dictionary.size(); i++) {
-      dictionary.add(other.dictionary.getToken(i));
+  /**
+   * A corpus over word ids which have already been assigned, whether held on the heap or
+   * elsewhere, such as in a mapped file.
+   *
+   * @param words the word id of every token, each less than the size of the dictionary.
+   * @param docOffsets the tokens of doc d are [docOffsets[d], docOffsets[d + 1]).
+   */
+  public Corpus(IntArray words, int[] docOffsets, Vocabulary dictionary) {
+    if (words.length() != docOffsets[docOffsets.length - 1]) {
+      throw new IllegalArgumentException("The doc offsets do not cover the " + words.length() + " tokens");
     }
+    this.words = words;
+    this.docOffsets = docOffsets;
+    this.dictionary = dictionary;
+    docCount = docOffsets.length - 1;
+    wordCount = dictionary.size();
+  }
 
-    docCount = other.docCount;
-    wordCount = other.wordCount;
+  /**
+   * Make room for topic assignments up to topicCount - 1, keeping any existing assignments
+   * which fit.  Until this is called every token's topic is -1.
+   */
+  void allocateTopics(int topicCount) {
+    final TopicArray old = topics;
+    if (old == null || !old.fits(topicCount)) {
+      topics = TopicArray.create(size(), topicCount);
+    }
+    if (old != null && (old != topics || topicCount < this.topicCount)) {
+      for (int i = 0; i < size(); i++) {
+        topics.set(i, Math.min(old.get(i), topicCount - 1));
+      }
+    }
+    this.topicCount = topicCount;
   }
 
-  private void add(int word, int doc) {
-    words.add(word);
-    docs.add(doc);
-    topics.add(-1);
+  /**
+   * Add documents at the end, and any new words to the end of the dictionary, in amortised
+   * O(new tokens): storage is reallocated with room to spare, and only when it is full or the
+   * word ids no longer fit in their bits.  The new tokens' topics are 0.  If there are new
+   * words, the dictionary is replaced by a copy with them added, which costs O(words); copies
+   * of this corpus keep the old one.
+   */
+  void append(List<List<String>> documents) {
+    long added = 0;
+    for (List<String> document : documents) {
+      added += document.size();
+    }
+    if (size() + added > Integer.MAX_VALUE) {
+      throw new IllegalStateException("A corpus holds at most " + Integer.MAX_VALUE + " tokens");
+    }
+    final int newSize = size() + (int) added;
+    final int[] ids = new int[(int) added];
+    Vocabulary.Builder builder = null;
+    int i = 0;
+    for (List<String> document : documents) {
+      for (String token : document) {
+        int id = builder == null ? dictionary.getIndex(token) : builder.getIndex(token);
+        if (id < 0) {
+          if (builder == null) {
+            builder = new Vocabulary.Builder(dictionary);
+          }
+          id = builder.add(token);
+        }
+        ids[i++] = id;
+      }
+    }
+    if (builder != null) {
+      dictionary = builder.build();
+    }
+    wordCount = dictionary.size();
+
+    final int maxValue = Math.max(0, wordCount - 1);
+    if (!(words instanceof PackedIntArray) || words.length() < newSize
+        || PackedIntArray.bitsFor(maxValue) > ((PackedIntArray) words).bits()) {
+      final PackedIntArray packed = new PackedIntArray(ArrayUtils.grownLength(words.length(), newSize), maxValue);
+      for (int j = 0; j < size(); j++) {
+        packed.set(j, words.get(j));
+      }
+      words = packed;
+    }
+    final PackedIntArray packed = (PackedIntArray) words;
+    for (int j = 0; j < ids.length; j++) {
+      packed.set(size() + j, ids[j]);
+    }
+    if (topics != null && topics.length() < newSize) {
+      topics = topics.copyOf(ArrayUtils.grownLength(topics.length(), newSize));
+    }
+    if (topics != null) {
+      for (int j = size(); j < newSize; j++) {
+        topics.set(j, 0);
+      }
+    }
+
+    docOffsets = ArrayUtils.grow(docOffsets, docCount + documents.size() + 1);
+    for (List<String> document : documents) {
+      docOffsets[docCount + 1] = docOffsets[docCount] + document.size();
+      docCount++;
+    }
+    wordOffsets = null;
+    tokensByWord = null;
+    blockIndex = null;
   }
 
+  /**
+   * The number of topics the assignments were allocated for, or 0 if they have not been.
+   */
+  int topicCount() {
+    return topicCount;
+  }
+
+  /**
+   * Safe to call from several threads at once, as long as they set different tokens.
+   */
   public void setTopic(int i, int topic) {
-    topics.setQuick(i, topic);
+    if (topics == null) {
+      throw new IllegalStateException("Topics can only be set once the corpus is given to an LDA");
+    }
+    topics.set(i, topic);
   }
 
   public int word(int i) {
-    return words.getQuick(i);
+    return words.get(i);
   }
 
+  /**
+   * The document the token is in.  This is a binary search; to visit every token of a
+   * document, loop from {@link #docStart(int)} to {@link #docEnd(int)} instead.
+   */
   public int doc(int i) {
-    return docs.getQuick(i);
+    if (i < 0 || i >= size()) {
+      throw new IndexOutOfBoundsException("Token " + i + " of " + size());
+    }
+    int low = 0;
+    int high = docCount - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (docOffsets[mid] <= i) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
   }
 
   public int topic(int i) {
-    return topics.getQuick(i);
+    return topics == null ? -1 : topics.get(i);
   }
 
   public int size() {
-    return topics.size();
+    return docOffsets[docCount];
+  }
+
+  /**
+   * The first token of the document.
+   */
+  public int docStart(int doc) {
+    return docOffsets[doc];
+  }
+
+  /**
+   * One past the last token of the document.
+   */
+  public int docEnd(int doc) {
+    return docOffsets[doc + 1];
   }
 
-  public BiDirectionalLookup<String> dictionary() {
+  public Vocabulary dictionary() {
     return dictionary;
   }
 
@@ -88,29 +269,78 @@ public class Corpus {
     return docCount;
   }
 
-  // public static void main(String[] args) {
-  //   Tester t = new Tester();
-  //   Corpus corpus = new Corpus();
-  //   corpus.add(0, 0);
-  //   corpus.add(1, 0);
-  //   corpus.add(2, 0);
-  //   corpus.add(1, 0);
-  //   corpus.add(3, 0);
-  //   corpus.add(1, 1);
-  //   corpus.add(4, 1);
-  //   corpus.add(5, 1);
-  //   corpus.add(1, 2);
-  //   corpus.add(2, 2);
-  //   corpus.add(2, 2);
-  //   corpus.add(2, 2);
-  //   corpus.add(2, 3);
-  //   corpus.add(2, 3);
-  //
-  //   t.is(corpus.getDocStartPoint(0), 0);
-  //   t.is(corpus.getDocStartPoint(1), 6);
-  //   t.is(corpus.getDocStartPoint(2), 9);
-  //   t.is(corpus.getDocStartPoint(3), 13);
-  //
-  //   t.results();
-  // }
-}
\ No newline at end of file
+  /**
+   * The start of each document's run of tokens, plus a final entry equal to size(), so that
+   * the tokens of doc d are [docOffsets[d], docOffsets[d + 1]).
+   */
+  int[] docOffsets() {
+    if (docOffsets.length != docCount + 1) {
+      docOffsets = Arrays.copyOf(docOffsets, docCount + 1);
+    }
+    return docOffsets;
+  }
+
+  /**
+   * Split the documents into contiguous ranges with roughly equal numbers of tokens.
+   *
+   * @param parts the number of ranges.
+   * @return parts + 1 boundaries, so that range p is docs [bounds[p], bounds[p + 1]).
+   */
+  int[] partitionDocs(int parts) {
+    final int[] offsets = docOffsets();
+    final int[] bounds = new int[parts + 1];
+    int doc = 0;
+    for (int p = 1; p < parts; p++) {
+      final long target = (long) size() * p / parts;
+      while (doc < docCount && offsets[doc] < target) {
+        doc++;
+      }
+      bounds[p] = doc;
+    }
+    bounds[parts] = docCount;
+    return bounds;
+  }
+
+  /**
+   * The tokens grouped into a parts x parts grid of (doc block, word block) cells.  The most
+   * recently built index is kept, so repeated calls with the same parts are free.
+   */
+  BlockIndex blockIndex(int parts) {
+    if (blockIndex == null || blockIndex.parts() != parts) {
+      blockIndex = new BlockIndex(this, parts);
+    }
+    return blockIndex;
+  }
+
+  /**
+   * The start of each word's run in tokensByWord(), plus a final entry equal to size().
+   */
+  int[] wordOffsets() {
+    if (wordOffsets == null) {
+      final int[] offsets = new int[wordCount + 1];
+      for (int i = 0; i < size(); i++) {
+        offsets[word(i) + 1]++;
+      }
+      for (int word = 0; word < wordCount; word++) {
+        offsets[word + 1] += offsets[word];
+      }
+      wordOffsets = offsets;
+    }
+    return wordOffsets;
+  }
+
+  /**
+   * Every token index, grouped by word and in corpus order within each word.
+   */
+  int[] tokensByWord() {
+    if (tokensByWord == null) {
+      final int[] next = Arrays.copyOf(wordOffsets(), wordCount);
+      final int[] tokens = new int[size()];
+      for (int i = 0; i < size(); i++) {
+        tokens[next[word(i)]++] = i;
+      }
+      tokensByWord = tokens;
+    }
+    return tokensByWord;
+  }
+}
@@ -0,0 +1,218 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.FileUtils;
+import com.github.neiljustice.lda.util.MappedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A single-file binary snapshot of a corpus: the dictionary, the document offsets, the word
+ * ids and, optionally, the topic assignments.  Reading one back skips preprocessing entirely.
+ * <p>
+ * The file is written in one sequential pass and read by mapping it: the word ids are used in
+ * place, straight from the page cache, and only the dictionary, the document offsets and any
+ * topics are copied onto the heap.  The topics are copied because training rewrites them, and
+ * the file should stay as it was written.
+ * <p>
+ * Layout, all little-endian:
+ * <pre>
+ *   header    magic "LDACORPS", then version, docCount, wordCount, tokenCount,
+ *             wordWidth, topicCount, topicWidth and hashBits as ints; topicCount is 0 if
+ *             the file holds no topics, and hashBits 0 unless the words are hashed
+ *   dictionary  int[wordCount + 1] offsets into the UTF-8 bytes that follow, word w being
+ *             bytes [offsets[w], offsets[w + 1]); bucket labels if the words are hashed
+ *   docs      int[docCount + 1] document offsets
+ *   words     tokenCount word ids of wordWidth bytes each
+ *   topics    tokenCount topics of topicWidth bytes each, if present
+ * </pre>
+ */
+public final class CorpusFile {
+  private static final long MAGIC = 0x5350524f4341444cL; // "LDACORPS", read little-endian
+  private static final int VERSION = 2;
+  private static final int HEADER_BYTES = 8 + 8 * 4;
+  /** Version 1 files have no hashBits. */
+  private static final int V1_HEADER_BYTES = 8 + 7 * 4;
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  private CorpusFile() {
+  }
+
+  /**
+   * Write a corpus, and its topic assignments if it has any, to a file.  The file is written
+   * beside the destination and then moved over it, so a corpus read from the old file, even
+   * the one being written, stays valid.
+   */
+  public static void write(Corpus corpus, Path file) {
+    final Path next = file.resolveSibling(file.getFileName() + ".next");
+    try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      write(corpus, channel, buffer);
+      FileUtils.drain(channel, buffer);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    FileUtils.moveAtomically(next, file);
+  }
+
+  /**
+   * Append a corpus to what has been written to the channel and the little-endian buffer, which
+   * may still hold some of it when this returns.
+   */
+  static void write(Corpus corpus, FileChannel channel, ByteBuffer buffer) {
+    final int wordCount = corpus.wordCount();
+    final Vocabulary dictionary = corpus.dictionary();
+    final int wordWidth = MappedIntArray.widthFor(Math.max(0, wordCount - 1));
+    final int topicCount = corpus.topicCount();
+    final int topicWidth = topicCount == 0 ? 0 : MappedIntArray.widthFor(topicCount - 1);
+
+    if (buffer.remaining() < HEADER_BYTES) {
+      FileUtils.drain(channel, buffer);
+    }
+    buffer.putLong(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(corpus.docCount());
+    buffer.putInt(wordCount);
+    buffer.putInt(corpus.size());
+    buffer.putInt(wordWidth);
+    buffer.putInt(topicCount);
+    buffer.putInt(topicWidth);
+    buffer.putInt(dictionary.hashBits());
+
+    int offset = 0;
+    int maxLength = 0;
+    putInt(channel, buffer, offset);
+    for (int word = 0; word < wordCount; word++) {
+      offset = Math.addExact(offset, dictionary.utf8Length(word));
+      maxLength = Math.max(maxLength, dictionary.utf8Length(word));
+      putInt(channel, buffer, offset);
+    }
+    final byte[] token = new byte[maxLength];
+    for (int word = 0; word < wordCount; word++) {
+      dictionary.getUtf8(word, token, 0);
+      for (int i = 0; i < dictionary.utf8Length(word); i++) {
+        if (!buffer.hasRemaining()) {
+          FileUtils.drain(channel, buffer);
+        }
+        buffer.put(token[i]);
+      }
+    }
+
+    for (int doc = 0; doc < corpus.docCount(); doc++) {
+      putInt(channel, buffer, corpus.docStart(doc));
+    }
+    putInt(channel, buffer, corpus.size());
+
+    for (int i = 0; i < corpus.size(); i++) {
+      put(channel, buffer, corpus.word(i), wordWidth);
+    }
+    for (int i = 0; topicCount > 0 && i < corpus.size(); i++) {
+      put(channel, buffer, corpus.topic(i), topicWidth);
+    }
+  }
+
+  /**
+   * Map a corpus written by {@link #write(Corpus, Path)}.  The file must not be changed while
+   * the corpus is in use.
+   */
+  public static Corpus read(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return read(channel, 0, file);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Map a corpus written by {@link #write(Corpus, FileChannel, ByteBuffer)} at the given
+   * position of a file.
+   *
+   * @param source the file, for error messages.
+   */
+  static Corpus read(FileChannel channel, long start, Object source) throws IOException {
+    final long size = channel.size();
+    if (size < start + HEADER_BYTES) {
+      throw new IllegalStateException(source + " is not a corpus file");
+    }
+    final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, start, HEADER_BYTES);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    if (header.getLong() != MAGIC) {
+      throw new IllegalStateException(source + " is not a corpus file");
+    }
+    final int version = header.getInt();
+    if (version != VERSION && version != 1) {
+      throw new IllegalStateException("Unknown corpus file version " + version + " in " + source);
+    }
+    final int docCount = header.getInt();
+    final int wordCount = header.getInt();
+    final int tokenCount = header.getInt();
+    final int wordWidth = header.getInt();
+    final int topicCount = header.getInt();
+    final int topicWidth = header.getInt();
+    final int hashBits = version == 1 ? 0 : header.getInt();
+
+    long position = start + (version == 1 ? V1_HEADER_BYTES : HEADER_BYTES);
+    // copied as it is: the vocabulary keeps the same offsets and UTF-8 bytes
+    final int[] offsets = new int[wordCount + 1];
+    map(channel, position, 4L * (wordCount + 1)).asIntBuffer().get(offsets);
+    position += 4L * (wordCount + 1);
+    final byte[] utf8 = new byte[offsets[wordCount]];
+    map(channel, position, utf8.length).get(utf8);
+    position += utf8.length;
+    final Vocabulary dictionary = Vocabulary.fromUtf8(utf8, offsets, hashBits);
+
+    final int[] docOffsets = new int[docCount + 1];
+    map(channel, position, 4L * (docCount + 1)).asIntBuffer().get(docOffsets);
+    position += 4L * (docCount + 1);
+
+    final long end = position + (long) tokenCount * (wordWidth + topicWidth);
+    if (size < end) {
+      throw new IllegalStateException(source + " is truncated");
+    }
+    final MappedIntArray words = MappedIntArray.map(channel, position, tokenCount, wordWidth,
+        FileChannel.MapMode.READ_ONLY);
+    position += (long) tokenCount * wordWidth;
+    final Corpus corpus = new Corpus(words, docOffsets, dictionary);
+
+    if (topicCount > 0) {
+      final MappedIntArray topics = MappedIntArray.map(channel, position, tokenCount, topicWidth,
+          FileChannel.MapMode.READ_ONLY);
+      corpus.allocateTopics(topicCount);
+      for (int i = 0; i < tokenCount; i++) {
+        corpus.setTopic(i, topics.get(i));
+      }
+    }
+    return corpus;
+  }
+
+  private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static void putInt(FileChannel channel, ByteBuffer buffer, int value) {
+    put(channel, buffer, value, 4);
+  }
+
+  private static void put(FileChannel channel, ByteBuffer buffer, int value, int width) {
+    if (buffer.remaining() < width) {
+      FileUtils.drain(channel, buffer);
+    }
+    switch (width) {
+      case 1:
+        buffer.put((byte) value);
+        break;
+      case 2:
+        buffer.putChar((char) value);
+        break;
+      default:
+        buffer.putInt(value);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.github.neiljustice.lda;
+
+/**
+ * A dense matrix of non-negative counts, stored row-major in a single flat array so that each
+ * row is contiguous in memory.  Rows should be whatever the sampler looks up per token (words
+ * for the topic-word counts, documents for the doc-topic counts), so that the K counts read
+ * for one token sit next to each other.
+ * <p>
+ * Use {@link #create(int, int, long)} to get the narrowest storage which can hold the largest
+ * count the matrix will ever need, or {@link #forRuns(int[], int)} to also consider sparse
+ * storage when most rows are too short to fill many columns.
+ * <p>
+ * To visit a row without reading every column, iterate its entries:
+ * <pre>
+ * for (int e = 0; e &lt; matrix.entryCount(row); e++) {
+ *   matrix.entryCol(row, e); matrix.entryValue(row, e);
+ * }
+ * </pre>
+ * Dense storage has an entry for every column, including zeros; sparse storage only has
+ * entries for non-zero counts.
+ */
+abstract class CountMatrix {
+  int rows;
+  final int cols;
+
+  CountMatrix(int rows, int cols) {
+    this.rows = rows;
+    this.cols = cols;
+  }
+
+  /**
+   * The length of the flat array a dense matrix of these dimensions needs.
+   */
+  static int denseLength(int rows, int cols) {
+    if ((long) rows * cols > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Count matrix of " + rows + " x " + cols + " is too large");
+    }
+    return rows * cols;
+  }
+
+  /**
+   * @param maxCount the largest value any cell can reach.
+   */
+  static CountMatrix create(int rows, int cols, long maxCount) {
+    if (maxCount <= Character.MAX_VALUE) {
+      return new CharCountMatrix(rows, cols);
+    }
+    return new IntCountMatrix(rows, cols);
+  }
+
+  /**
+   * Storage for a matrix whose rows each hold a known number of items, such as the tokens of
+   * each document.  No count can exceed its row's run, and no row can have more non-zero
+   * columns than that either, so when the runs are mostly much shorter than the number of
+   * columns, a {@link SparseCountMatrix} is used; otherwise the narrowest dense storage.
+   *
+   * @param offsets CSR offsets: row r holds the items offsets[r] to offsets[r + 1].
+   */
+  static CountMatrix forRuns(int[] offsets, int cols) {
+    final int rows = offsets.length - 1;
+    long maxRun = 0;
+    long sparseEntries = 0;
+    for (int row = 0; row < rows; row++) {
+      final int run = offsets[row + 1] - offsets[row];
+      maxRun = Math.max(maxRun, run);
+      sparseEntries += Math.min(run, cols);
+    }
+    final long denseBytes = (long) rows * cols * (maxRun <= Character.MAX_VALUE ? 2 : 4);
+    // one packed int per entry, plus a start and a size per row
+    final long sparseBytes = (sparseEntries + 2L * rows) * 4;
+    if (2 * sparseBytes <= denseBytes && SparseCountMatrix.fits(cols, maxRun)
+        && sparseEntries <= Integer.MAX_VALUE) {
+      return new SparseCountMatrix(offsets, cols);
+    }
+    return create(rows, cols, maxRun);
+  }
+
+  abstract int get(int row, int col);
+
+  abstract void set(int row, int col, int value);
+
+  /**
+   * @return the new count.
+   */
+  abstract int increment(int row, int col);
+
+  /**
+   * @return the new count.
+   */
+  abstract int decrement(int row, int col);
+
+  abstract void add(int row, int col, int delta);
+
+  abstract void clear();
+
+  /**
+   * The number of entries stored for the row.
+   */
+  int entryCount(int row) {
+    return cols;
+  }
+
+  /**
+   * The column of the row's nth entry.
+   */
+  int entryCol(int row, int entry) {
+    return entry;
+  }
+
+  /**
+   * The count in the row's nth entry.
+   */
+  int entryValue(int row, int entry) {
+    return get(row, entry);
+  }
+
+  /**
+   * An empty matrix with the same dimensions and storage as this one.
+   */
+  abstract CountMatrix emptyCopy();
+
+  /**
+   * Add a row of zero counts at the end for each run, the number of items that row holds, and
+   * make room for any count to reach maxCount.  The storage is grown in place, with room to
+   * spare so that adding rows a few at a time is amortised O(cols) a row, and this matrix is
+   * returned; unless the storage cannot hold maxCount, in which case a wider copy is.
+   */
+  abstract CountMatrix grow(int[] runs, long maxCount);
+
+  /**
+   * A dense int copy of this matrix, with extra rows of zero counts.
+   */
+  CountMatrix widen(int extraRows) {
+    final IntCountMatrix wider = new IntCountMatrix(rows + extraRows, cols);
+    for (int row = 0; row < rows; row++) {
+      for (int e = 0; e < entryCount(row); e++) {
+        wider.set(row, entryCol(row, e), entryValue(row, e));
+      }
+    }
+    return wider;
+  }
+
+  /**
+   * Overwrite the given rows with those of another matrix of the same dimensions and storage.
+   */
+  abstract void copyRows(CountMatrix other, int startRow, int endRow);
+}
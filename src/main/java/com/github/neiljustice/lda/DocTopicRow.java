@@ -0,0 +1,67 @@
+package com.github.neiljustice.lda;
+
+/**
+ * A dense copy of one document's topic counts, for samplers which read every topic's count
+ * for each token.  Reading the copy is a plain array access whatever the storage of
+ * topicsInDoc, which matters when that storage is a {@link SparseCountMatrix}, where looking up
+ * one count is a search.
+ * <p>
+ * The samplers visit each document's tokens together, so the copy is only reloaded when the
+ * document changes.  Loading or clearing it only touches the document's stored entries, so
+ * costs O(min(doc length, K)) for sparse storage.  Owned by a single sampling thread.
+ */
+final class DocTopicRow {
+  private final CountMatrix topicsInDoc;
+  /** The counts of the current document, indexed by topic, and zero for every other topic. */
+  final double[] counts;
+  private int doc = -1;
+
+  DocTopicRow(CountMatrix topicsInDoc, int topicCount) {
+    this.topicsInDoc = topicsInDoc;
+    counts = new double[topicCount];
+  }
+
+  /**
+   * Make this the copy of the given document's counts, if it is not already.
+   */
+  void load(int doc) {
+    if (doc == this.doc) {
+      return;
+    }
+    clear();
+    for (int e = 0; e < topicsInDoc.entryCount(doc); e++) {
+      counts[topicsInDoc.entryCol(doc, e)] = topicsInDoc.entryValue(doc, e);
+    }
+    this.doc = doc;
+  }
+
+  /**
+   * Zero the copy.  Must be called before topicsInDoc is changed other than through
+   * {@link #increment(int)} and {@link #decrement(int)}.
+   */
+  void clear() {
+    if (doc < 0) {
+      return;
+    }
+    for (int e = 0; e < topicsInDoc.entryCount(doc); e++) {
+      counts[topicsInDoc.entryCol(doc, e)] = 0d;
+    }
+    doc = -1;
+  }
+
+  /**
+   * Increment the current document's count of the topic, in both the copy and topicsInDoc.
+   */
+  void increment(int topic) {
+    topicsInDoc.increment(doc, topic);
+    counts[topic]++;
+  }
+
+  /**
+   * Decrement the current document's count of the topic, in both the copy and topicsInDoc.
+   */
+  void decrement(int topic) {
+    topicsInDoc.decrement(doc, topic);
+    counts[topic]--;
+  }
+}
@@ -0,0 +1,353 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Finds the documents whose topic mixtures are nearest to a document's, by Hellinger
+ * distance.  Each document's theta is held as the square roots of its probabilities, as a
+ * row of floats, and the rows laid end to end.  The Hellinger distance between two mixtures
+ * is sqrt(1 - sum of sqrt(p * q)), so the nearest documents are those whose rows have the
+ * largest dot product with the query's, and a query is a scan of one flat array.  The scan
+ * is split into blocks of documents searched in parallel.
+ * <p>
+ * With {@link #withDominantTopics(int)}, a query only considers documents which share at
+ * least one of their dominant topics with it.  This is much faster when there are many
+ * topics, but may miss neighbours whose likeness is spread thinly over many topics.
+ * <p>
+ * Queries may be run from any number of threads at once; the with methods should only be
+ * called before the index is shared.
+ */
+public class DocumentIndex {
+  /** Documents per task when a scan is split across threads. */
+  private static final int BLOCK_DOCS = 4096;
+  private static final Comparator<Neighbour> NEAREST_FIRST = Comparator
+      .comparingDouble(Neighbour::getDistance)
+      .thenComparingInt(Neighbour::getDoc);
+
+  private final int docCount;
+  private final int topicCount;
+  /** sqrt(theta), doc-major: roots[doc * topicCount + topic] */
+  private final float[] roots;
+  /**
+   * The length of each row of roots.  1 but for the rounding of the roots to floats, which
+   * is divided out so that a document is at a distance of 0 from itself.
+   */
+  private final double[] norms;
+  private int dominantTopics = 0;
+  /** For each topic, the documents it is dominant in, in order; null without pruning. */
+  private int[][] postings;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  private ExecutorService executor = ThreadUtils.newDaemonPool(parallelism, "lda-index");
+
+  /**
+   * Index the documents of a trained model.
+   *
+   * @throws IllegalArgumentException if the model has no theta.
+   */
+  public DocumentIndex(LDAModel model) {
+    final MatrixView theta = model.getThetaView();
+    if (theta == null) {
+      throw new IllegalArgumentException("The model has no theta to index");
+    }
+    topicCount = theta.rows();
+    docCount = theta.cols();
+    roots = new float[Math.multiplyExact(docCount, topicCount)];
+    norms = new double[docCount];
+    final double[] row = new double[topicCount];
+    for (int doc = 0; doc < docCount; doc++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        row[topic] = theta.get(topic, doc);
+      }
+      setRoots(doc, row);
+    }
+  }
+
+  /**
+   * Index documents by their topic mixtures, such as those returned by
+   * {@link Inferencer#infer(int[][])}.
+   *
+   * @param theta the mixtures, indexed [doc][topic].
+   */
+  public DocumentIndex(double[][] theta) {
+    docCount = theta.length;
+    topicCount = docCount == 0 ? 0 : theta[0].length;
+    roots = new float[Math.multiplyExact(docCount, topicCount)];
+    norms = new double[docCount];
+    for (int doc = 0; doc < docCount; doc++) {
+      if (theta[doc].length != topicCount) {
+        throw new IllegalArgumentException("Document " + doc + " has " + theta[doc].length
+            + " topics rather than " + topicCount);
+      }
+      setRoots(doc, theta[doc]);
+    }
+  }
+
+  /**
+   * Only consider, for each query, the documents which share one of their most probable
+   * topics with the query's most probable topics.
+   *
+   * @param topics the number of most probable topics of each document to match on, or 0 to
+   *               scan every document.
+   */
+  public DocumentIndex withDominantTopics(int topics) {
+    if (topics < 0 || topics > topicCount) {
+      throw new IllegalArgumentException("Dominant topics must be from 0 to " + topicCount);
+    }
+    dominantTopics = topics;
+    postings = topics == 0 ? null : buildPostings();
+    return this;
+  }
+
+  /**
+   * Set the number of threads a scan is spread across.  Defaults to the number of cores.
+   */
+  public DocumentIndex withParallelism(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    parallelism = threads;
+    executor.shutdown();
+    executor = ThreadUtils.newDaemonPool(threads, "lda-index");
+    return this;
+  }
+
+  public int docCount() {
+    return docCount;
+  }
+
+  public int topicCount() {
+    return topicCount;
+  }
+
+  /**
+   * The k documents nearest to an indexed document, other than itself, nearest first.
+   */
+  public List<Neighbour> nearest(int doc, int k) {
+    if (doc < 0 || doc >= docCount) {
+      throw new IllegalArgumentException("No document " + doc + " in an index of " + docCount);
+    }
+    final float[] query = Arrays.copyOfRange(roots, doc * topicCount, (doc + 1) * topicCount);
+    return search(query, norms[doc], doc, k);
+  }
+
+  /**
+   * The k indexed documents nearest to a new document, nearest first.
+   *
+   * @param theta the new document's topic mixture, as from {@link Inferencer} or
+   *              {@link ServingModel}.
+   */
+  public List<Neighbour> nearest(double[] theta, int k) {
+    if (theta.length != topicCount) {
+      throw new IllegalArgumentException("theta has " + theta.length + " topics rather than " + topicCount);
+    }
+    final float[] query = new float[topicCount];
+    roots(theta, query, 0);
+    return search(query, Math.sqrt(dot(query, 0, query, 0, topicCount)), -1, k);
+  }
+
+  /**
+   * The Hellinger distance between two indexed documents.
+   */
+  public double distance(int doc, int other) {
+    return distance(dot(roots, doc * topicCount, roots, other * topicCount, topicCount)
+        / (norms[doc] * norms[other]));
+  }
+
+  private List<Neighbour> search(float[] query, double queryNorm, int exclude, int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative");
+    }
+    final int[] candidates = postings == null ? null : candidates(query);
+    final int size = candidates == null ? docCount : candidates.length;
+    // one more, in case the excluded document is among the best
+    final int limit = Math.min(size, exclude < 0 ? k : k + 1);
+
+    final TopScores best;
+    if (parallelism == 1 || size <= BLOCK_DOCS) {
+      best = scan(query, candidates, 0, size, limit);
+    } else {
+      final List<Callable<TopScores>> tasks = new ArrayList<>();
+      for (int start = 0; start < size; start += BLOCK_DOCS) {
+        final int from = start;
+        final int to = Math.min(size, start + BLOCK_DOCS);
+        tasks.add(() -> scan(query, candidates, from, to, limit));
+      }
+      best = new TopScores(limit);
+      for (TopScores block : ThreadUtils.invokeAll(executor, tasks)) {
+        best.offerAll(block);
+      }
+    }
+
+    final List<Neighbour> neighbours = new ArrayList<>(best.size());
+    for (int i = 0; i < best.size(); i++) {
+      if (best.index(i) != exclude) {
+        neighbours.add(new Neighbour(best.index(i), distance(best.score(i) / queryNorm)));
+      }
+    }
+    neighbours.sort(NEAREST_FIRST);
+    return neighbours.size() > k ? new ArrayList<>(neighbours.subList(0, k)) : neighbours;
+  }
+
+  /**
+   * The best dot products with the query, over the document's norm, among documents
+   * [from, to), or among candidates [from, to) if there are candidates.
+   */
+  private TopScores scan(float[] query, int[] candidates, int from, int to, int limit) {
+    final TopScores best = new TopScores(limit);
+    if (limit == 0) {
+      return best;
+    }
+    for (int i = from; i < to; i++) {
+      final int doc = candidates == null ? i : candidates[i];
+      best.offer(doc, dot(query, 0, roots, doc * topicCount, topicCount) / norms[doc]);
+    }
+    return best;
+  }
+
+  /**
+   * Four independent sums, so the adds need not wait on each other.
+   */
+  private static double dot(float[] a, int aFrom, float[] b, int bFrom, int length) {
+    double sum0 = 0;
+    double sum1 = 0;
+    double sum2 = 0;
+    double sum3 = 0;
+    int i = 0;
+    for (; i + 3 < length; i += 4) {
+      sum0 += (double) a[aFrom + i] * b[bFrom + i];
+      sum1 += (double) a[aFrom + i + 1] * b[bFrom + i + 1];
+      sum2 += (double) a[aFrom + i + 2] * b[bFrom + i + 2];
+      sum3 += (double) a[aFrom + i + 3] * b[bFrom + i + 3];
+    }
+    for (; i < length; i++) {
+      sum0 += (double) a[aFrom + i] * b[bFrom + i];
+    }
+    return sum0 + sum1 + sum2 + sum3;
+  }
+
+  /**
+   * The Hellinger distance for a dot product of roots, which rounding may take just over 1.
+   */
+  private static double distance(double dot) {
+    return Math.sqrt(Math.max(0d, 1d - dot));
+  }
+
+  private void setRoots(int doc, double[] theta) {
+    roots(theta, roots, doc * topicCount);
+    norms[doc] = Math.sqrt(dot(roots, doc * topicCount, roots, doc * topicCount, topicCount));
+  }
+
+  /**
+   * sqrt of theta normalised to sum to 1, so that mixtures which do not quite sum to 1
+   * still have a distance of 0 from themselves.
+   */
+  private void roots(double[] theta, float[] into, int offset) {
+    double sum = 0;
+    for (int topic = 0; topic < topicCount; topic++) {
+      if (!(theta[topic] >= 0)) {
+        throw new IllegalArgumentException("Topic probabilities must not be negative: " + theta[topic]);
+      }
+      sum += theta[topic];
+    }
+    for (int topic = 0; topic < topicCount; topic++) {
+      into[offset + topic] = sum > 0 ? (float) Math.sqrt(theta[topic] / sum) : 0f;
+    }
+  }
+
+  /**
+   * The most probable topics of a row of roots.
+   */
+  private int[] dominant(float[] row, int offset) {
+    final TopScores top = new TopScores(dominantTopics);
+    for (int topic = 0; topic < topicCount; topic++) {
+      top.offer(topic, row[offset + topic]);
+    }
+    final int[] topics = new int[top.size()];
+    for (int i = 0; i < topics.length; i++) {
+      topics[i] = top.index(i);
+    }
+    return topics;
+  }
+
+  private int[][] buildPostings() {
+    final int[][] dominant = new int[docCount][];
+    final int[] lengths = new int[topicCount];
+    for (int doc = 0; doc < docCount; doc++) {
+      dominant[doc] = dominant(roots, doc * topicCount);
+      for (int topic : dominant[doc]) {
+        lengths[topic]++;
+      }
+    }
+    final int[][] lists = new int[topicCount][];
+    for (int topic = 0; topic < topicCount; topic++) {
+      lists[topic] = new int[lengths[topic]];
+      lengths[topic] = 0;
+    }
+    for (int doc = 0; doc < docCount; doc++) {
+      for (int topic : dominant[doc]) {
+        lists[topic][lengths[topic]++] = doc;
+      }
+    }
+    return lists;
+  }
+
+  /**
+   * The documents dominated by any of the query's dominant topics, in order and without
+   * repeats.
+   */
+  private int[] candidates(float[] query) {
+    int total = 0;
+    final int[] topics = dominant(query, 0);
+    for (int topic : topics) {
+      total += postings[topic].length;
+    }
+    final int[] docs = new int[total];
+    int at = 0;
+    for (int topic : topics) {
+      System.arraycopy(postings[topic], 0, docs, at, postings[topic].length);
+      at += postings[topic].length;
+    }
+    Arrays.sort(docs);
+    int unique = 0;
+    for (int i = 0; i < total; i++) {
+      if (unique == 0 || docs[unique - 1] != docs[i]) {
+        docs[unique++] = docs[i];
+      }
+    }
+    return Arrays.copyOf(docs, unique);
+  }
+
+  /**
+   * An indexed document and its Hellinger distance from the query, from 0 for the same
+   * mixture to 1 for mixtures with no topics in common.
+   */
+  public static final class Neighbour {
+    private final int doc;
+    private final double distance;
+
+    Neighbour(int doc, double distance) {
+      this.doc = doc;
+      this.distance = distance;
+    }
+
+    public int getDoc() {
+      return doc;
+    }
+
+    public double getDistance() {
+      return distance;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d : %.03f", doc, distance);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.github.neiljustice.lda;
+
+/**
+ * Collapsed Gibbs sampler.  Each token costs O(K).
+ * <p>
+ * A cycle allocates nothing: the per-topic weights are written to a scratch array owned by
+ * the sampling thread, and 1 / (tokensInTopic[t] + betaSum) is cached and only recomputed
+ * for the two topics a token moves between.
+ */
+class GibbsSampler implements Sampler {
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final ThreadLocal<double[]> probabilities;
+  private final ThreadLocal<DocTopicRow> docRow;
+  /** 1 / (tokensInTopic[t] + betaSum) */
+  private final double[] inverseTopicTotals;
+
+  GibbsSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    probabilities = ThreadLocal.withInitial(() -> new double[lda.topicCount]);
+    docRow = ThreadLocal.withInitial(() -> new DocTopicRow(lda.topicsInDoc, lda.topicCount));
+    inverseTopicTotals = new double[lda.topicCount];
+  }
+
+  @Override
+  public void cycle() {
+    cycle(0, lda.docCount);
+  }
+
+  /**
+   * Sample the tokens of docs [startDoc, endDoc) only, leaving every other doc's as it is.
+   */
+  void cycle(int startDoc, int endDoc) {
+    final double[] probabilities = this.probabilities.get();
+    final DocTopicRow docRow = this.docRow.get();
+    for (int topic = 0; topic < lda.topicCount; topic++) {
+      updateInverseTopicTotal(topic);
+    }
+
+    for (int doc = startDoc; doc < endDoc; doc++) {
+      docRow.load(doc);
+      for (int i = corpus.docStart(doc); i < corpus.docEnd(doc); i++) {
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        lda.tokensInTopic[oldTopic]--;
+        lda.wordsInTopic.decrement(word, oldTopic);
+        docRow.decrement(oldTopic);
+        updateInverseTopicTotal(oldTopic);
+
+        final int newTopic = sample(word, docRow.counts, probabilities);
+
+        lda.tokensInTopic[newTopic]++;
+        lda.wordsInTopic.increment(word, newTopic);
+        docRow.increment(newTopic);
+        updateInverseTopicTotal(newTopic);
+        corpus.setTopic(i, newTopic);
+      }
+    }
+    docRow.clear();
+  }
+
+  private void updateInverseTopicTotal(int topic) {
+    inverseTopicTotals[topic] = 1d / (lda.tokensInTopic[topic] + lda.betaSum);
+  }
+
+  private int sample(int word, double[] docCounts, double[] probabilities) {
+    double sum = 0;
+
+    for (int topic = 0; topic < lda.topicCount; topic++) {
+      probabilities[topic] = (docCounts[topic] + lda.alpha[topic])
+          * (lda.wordsInTopic.get(word, topic) + lda.beta)
+          * inverseTopicTotals[topic];
+      sum += probabilities[topic];
+    }
+
+    return Probability.sampleFromMultinomialDist(probabilities, sum);
+  }
+}
@@ -0,0 +1,154 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Lock-free parallel Gibbs sampler in the style of Hogwild! (Niu, Recht, Re and Wright, 2011).
+ * <p>
+ * The documents are split into one partition per thread, and all threads sample against the
+ * same counts while the others are updating them:
+ * <ul>
+ * <li>the model's topic-word counts are themselves an {@link AtomicCountMatrix}, updated with
+ * atomic increments and read without any coordination, so reads may be stale;</li>
+ * <li>tokensInTopic is striped: each thread adds its own changes to a private delta over the
+ * value at the start of the cycle, and the deltas are summed at the end;</li>
+ * <li>topicsInDoc is only written by the thread which owns the document.</li>
+ * </ul>
+ * Unlike {@link ParallelGibbsSampler} there are no snapshots of the topic-word counts to copy
+ * or merge: the counts are converted to atomic storage once, when the sampler is created,
+ * and stay that way until {@link LDA#withSampler(SamplerType)} picks another engine, which
+ * converts them back.  Each update is exact, so the counts always match the corpus once a
+ * cycle is over.
+ * <p>
+ * The threads are joined at the end of every cycle, as {@link Sampler#cycle()} requires, so
+ * that alpha, the parameters and the perplexity are computed from settled counts.  Beyond that
+ * join and the O(P * K) sum of the tokensInTopic deltas, a cycle has no serial work.
+ */
+class HogwildSampler implements Sampler {
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  private ExecutorService executor;
+  private List<Worker> workers;
+
+  HogwildSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+
+    if (!(lda.wordsInTopic instanceof AtomicCountMatrix)) {
+      lda.wordsInTopic = AtomicCountMatrix.copyOf(lda.wordsInTopic, 0);
+    }
+  }
+
+  @Override
+  public void cycle() {
+    if (workers == null || workers.size() != lda.parallelism) {
+      init(lda.parallelism);
+    }
+
+    ThreadUtils.invokeAll(executor, workers);
+
+    for (int topic = 0; topic < topicCount; topic++) {
+      int sum = lda.tokensInTopic[topic];
+      for (Worker worker : workers) {
+        sum += worker.topicDeltas[topic];
+      }
+      lda.tokensInTopic[topic] = sum;
+    }
+  }
+
+  private void init(int threads) {
+    if (executor != null) {
+      executor.shutdown();
+    }
+    executor = ThreadUtils.newDaemonPool(threads, "lda-sampler");
+
+    final int[] bounds = corpus.partitionDocs(threads);
+    workers = new ArrayList<>(threads);
+    for (int p = 0; p < threads; p++) {
+      workers.add(new Worker(bounds[p], bounds[p + 1]));
+    }
+  }
+
+  private final class Worker implements Callable<Void> {
+    private final int startDoc;
+    private final int startToken;
+    private final int endToken;
+    private final int[] topicDeltas;
+    /** 1 / (tokensInTopic[t] + topicDeltas[t] + betaSum), as this thread sees it. */
+    private final double[] inverseTopicTotals;
+    private final double[] probabilities;
+    private final DocTopicRow docRow;
+
+    Worker(int startDoc, int endDoc) {
+      this.startDoc = startDoc;
+      startToken = corpus.docStart(startDoc);
+      endToken = corpus.docStart(endDoc);
+      topicDeltas = new int[topicCount];
+      inverseTopicTotals = new double[topicCount];
+      probabilities = new double[topicCount];
+      docRow = new DocTopicRow(lda.topicsInDoc, topicCount);
+    }
+
+    @Override
+    public Void call() {
+      Arrays.fill(topicDeltas, 0);
+      for (int topic = 0; topic < topicCount; topic++) {
+        updateInverseTopicTotal(topic);
+      }
+      final CountMatrix wordsInTopic = lda.wordsInTopic;
+
+      int doc = startDoc;
+      for (int i = startToken; i < endToken; i++) {
+        while (corpus.docEnd(doc) <= i) {
+          doc++;
+        }
+        docRow.load(doc);
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        topicDeltas[oldTopic]--;
+        updateInverseTopicTotal(oldTopic);
+        wordsInTopic.decrement(word, oldTopic);
+        docRow.decrement(oldTopic);
+
+        final int newTopic = sample(wordsInTopic, word);
+
+        topicDeltas[newTopic]++;
+        updateInverseTopicTotal(newTopic);
+        wordsInTopic.increment(word, newTopic);
+        docRow.increment(newTopic);
+        corpus.setTopic(i, newTopic);
+      }
+      docRow.clear();
+      return null;
+    }
+
+    private void updateInverseTopicTotal(int topic) {
+      inverseTopicTotals[topic] = 1d / (lda.tokensInTopic[topic] + topicDeltas[topic] + lda.betaSum);
+    }
+
+    /**
+     * Another thread's tokens may be mid-move between topics, but every count still includes
+     * this token's and its partition's own, so none is ever read as negative.
+     */
+    private int sample(CountMatrix wordsInTopic, int word) {
+      double sum = 0;
+
+      for (int topic = 0; topic < topicCount; topic++) {
+        probabilities[topic] = (docRow.counts[topic] + lda.alpha[topic])
+            * (wordsInTopic.get(word, topic) + lda.beta)
+            * inverseTopicTotals[topic];
+        sum += probabilities[topic];
+      }
+
+      return Probability.sampleFromMultinomialDist(probabilities, sum);
+    }
+  }
+}
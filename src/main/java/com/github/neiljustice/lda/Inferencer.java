@@ -0,0 +1,397 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import com.github.neiljustice.lda.util.ThreadUtils;
+import com.github.neiljustice.lda.util.Vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+/**
+ * Topic mixtures for documents a model was not trained on, by Gibbs sampling the topics of
+ * their tokens against the model's phi, which is held fixed ("folding in").  Words which are
+ * not in the model's dictionary are skipped.
+ * <p>
+ * With {@link #withVariational(double)}, documents are instead fitted by mean-field
+ * variational inference, which is deterministic: the same document always gets the same theta.
+ * <p>
+ * Each document is sampled on its own, so the documents of a batch are spread across
+ * threads.  The infer methods may be called from any number of threads at once; the with
+ * methods should only be called before the inferencer is shared.
+ */
+public class Inferencer {
+  public static final int DEFAULT_ITERATIONS = 40;
+  /** Mean change in gamma per topic below which variational inference stops. */
+  public static final double DEFAULT_TOLERANCE = 1e-3;
+  /** Documents per task when a batch is split across threads. */
+  private static final int BATCH_DOCS = 64;
+
+  private final Vocabulary dictionary;
+  private final int topicCount;
+  private final int wordCount;
+  /** The model's phi, word-major: word w's probability under topic t is phi[w * topicCount + t]. */
+  private final double[] phi;
+  private final double[] alpha;
+  private final double alphaSum;
+  private final ThreadLocal<Workspace> workspace;
+  private PreprocessingPipeline pipeline = PreprocessingPipeline.noOpPipeline();
+  private int iterations = DEFAULT_ITERATIONS;
+  private int burnIn = DEFAULT_ITERATIONS / 2;
+  private boolean variational = false;
+  private double tolerance = DEFAULT_TOLERANCE;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  private ExecutorService executor = ThreadUtils.newDaemonPool(parallelism, "lda-inference");
+
+  /**
+   * phi is copied, so the model may be mapped from a file which is then closed or changed.
+   */
+  public Inferencer(LDAModel model) {
+    final MatrixView view = model.getPhiView();
+    dictionary = model.getCorpus().dictionary();
+    topicCount = model.getTopics();
+    wordCount = view.rows();
+    phi = new double[Math.multiplyExact(wordCount, topicCount)];
+    for (int word = 0; word < wordCount; word++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        phi[word * topicCount + topic] = view.get(word, topic);
+      }
+    }
+    alpha = model.getAlpha().clone();
+    alphaSum = Arrays.stream(alpha).sum();
+    workspace = ThreadLocal.withInitial(() -> new Workspace(topicCount));
+  }
+
+  /**
+   * Set the number of Gibbs iterations run per document.  theta is averaged over the second
+   * half of them.  For variational inference, this is the most updates run per document.
+   */
+  public Inferencer withIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("There must be at least one iteration");
+    }
+    this.iterations = iterations;
+    burnIn = iterations / 2;
+    return this;
+  }
+
+  /**
+   * Fit documents by variational inference rather than Gibbs sampling, with
+   * {@link #DEFAULT_TOLERANCE}.
+   */
+  public Inferencer withVariational() {
+    return withVariational(DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Fit documents by mean-field variational inference rather than Gibbs sampling, as in
+   * Blei, Ng and Jordan, 2003, with the model's phi as beta.  The updates of gamma, the
+   * document's Dirichlet parameters, stop once its mean change per topic falls below the
+   * tolerance, or after the set number of iterations.  theta is gamma normalised.
+   */
+  public Inferencer withVariational(double tolerance) {
+    if (tolerance <= 0) {
+      throw new IllegalArgumentException("Tolerance must be positive");
+    }
+    this.tolerance = tolerance;
+    variational = true;
+    return this;
+  }
+
+  /**
+   * Set the number of threads a batch is spread across.  Defaults to the number of cores.
+   */
+  public Inferencer withParallelism(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    parallelism = threads;
+    executor.shutdown();
+    executor = ThreadUtils.newDaemonPool(threads, "lda-inference");
+    return this;
+  }
+
+  /**
+   * Set the pipeline raw text is tokenised with.  It should be the one the model's corpus was
+   * preprocessed with; by default it is {@link PreprocessingPipeline#noOpPipeline()}.
+   */
+  public Inferencer withPipeline(PreprocessingPipeline pipeline) {
+    this.pipeline = pipeline;
+    return this;
+  }
+
+  /**
+   * theta for a document given as word ids of the model's dictionary.  Ids outside it, such
+   * as the -1 of a failed lookup, are skipped.
+   *
+   * @return the probability of each topic in the document.
+   */
+  public double[] infer(int[] words) {
+    final Workspace ws = workspace.get();
+    ws.clear();
+    for (int word : words) {
+      if (word >= 0 && word < wordCount) {
+        ws.add(word);
+      }
+    }
+    return variational ? fit(ws) : sample(ws);
+  }
+
+  /**
+   * theta for a tokenised document.
+   */
+  public double[] infer(List<String> tokens) {
+    final Workspace ws = workspace.get();
+    ws.clear();
+    for (String token : tokens) {
+      final int word = dictionary.getIndex(token);
+      if (word >= 0 && word < wordCount) {
+        ws.add(word);
+      }
+    }
+    return variational ? fit(ws) : sample(ws);
+  }
+
+  /**
+   * theta for a raw document, tokenised with the pipeline.
+   */
+  public double[] inferText(String document) {
+    return infer(pipeline.tokenise(document));
+  }
+
+  /**
+   * theta for each of a batch of documents given as word ids, in parallel.
+   *
+   * @return theta for each document, indexed [doc][topic].
+   */
+  public double[][] infer(int[][] documents) {
+    return inferBatch(documents.length, doc -> infer(documents[doc]));
+  }
+
+  /**
+   * theta for each of a batch of tokenised documents, in parallel.
+   *
+   * @return theta for each document, indexed [doc][topic].
+   */
+  public double[][] inferAll(List<List<String>> documents) {
+    return inferBatch(documents.size(), doc -> infer(documents.get(doc)));
+  }
+
+  /**
+   * theta for each of a batch of raw documents, tokenised and sampled in parallel.
+   *
+   * @return theta for each document, indexed [doc][topic].
+   */
+  public double[][] inferText(List<String> documents) {
+    return inferBatch(documents.size(), doc -> inferText(documents.get(doc)));
+  }
+
+  private double[][] inferBatch(int docCount, IntFunction<double[]> inferDoc) {
+    final double[][] theta = new double[docCount][];
+    if (parallelism == 1 || docCount <= BATCH_DOCS) {
+      for (int doc = 0; doc < docCount; doc++) {
+        theta[doc] = inferDoc.apply(doc);
+      }
+      return theta;
+    }
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int start = 0; start < docCount; start += BATCH_DOCS) {
+      final int from = start;
+      final int to = Math.min(docCount, start + BATCH_DOCS);
+      tasks.add(() -> {
+        for (int doc = from; doc < to; doc++) {
+          theta[doc] = inferDoc.apply(doc);
+        }
+        return null;
+      });
+    }
+    ThreadUtils.invokeAll(executor, tasks);
+    return theta;
+  }
+
+  /**
+   * Start each token on a topic drawn given the tokens before it, then run the iterations,
+   * and average (topic count + alpha) over those after the burn-in.
+   */
+  private double[] sample(Workspace ws) {
+    final int length = ws.length;
+    if (length == 0) {
+      return prior();
+    }
+    final double[] theta = new double[topicCount];
+
+    final int[] words = ws.words;
+    final int[] topics = ws.topics;
+    final int[] counts = ws.counts;
+    for (int i = 0; i < length; i++) {
+      topics[i] = draw(words[i], counts, ws.probabilities);
+      counts[topics[i]]++;
+    }
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      for (int i = 0; i < length; i++) {
+        counts[topics[i]]--;
+        topics[i] = draw(words[i], counts, ws.probabilities);
+        counts[topics[i]]++;
+      }
+      if (iteration >= burnIn) {
+        for (int topic = 0; topic < topicCount; topic++) {
+          theta[topic] += counts[topic] + alpha[topic];
+        }
+      }
+    }
+
+    final double total = (iterations - burnIn) * (length + alphaSum);
+    for (int topic = 0; topic < topicCount; topic++) {
+      theta[topic] /= total;
+    }
+    return theta;
+  }
+
+  /**
+   * Fixed-point updates of gamma.  Each word's variational distribution over topics is
+   * proportional to phi[w][t] * exp(digamma(gamma[t])), and gamma is alpha plus their sum over
+   * the tokens.  The exp(-digamma(sum of gamma)) term of the usual update is the same for
+   * every topic, so cancels when each word's distribution is normalised, and is left out.
+   * Repeated words are collapsed into one word with a count.
+   */
+  private double[] fit(Workspace ws) {
+    final int length = ws.length;
+    if (length == 0) {
+      return prior();
+    }
+    final int unique = ws.collapse();
+    final int[] words = ws.words;
+    final int[] wordCounts = ws.topics;
+    final double[] gamma = new double[topicCount];
+    final double[] expDigamma = ws.probabilities;
+    final double[] totals = ws.totals;
+    for (int topic = 0; topic < topicCount; topic++) {
+      gamma[topic] = alpha[topic] + (double) length / topicCount;
+    }
+
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        expDigamma[topic] = Math.exp(Probability.digamma(gamma[topic]));
+      }
+      Arrays.fill(totals, 0);
+      for (int i = 0; i < unique; i++) {
+        final int offset = words[i] * topicCount;
+        double norm = 0;
+        for (int topic = 0; topic < topicCount; topic++) {
+          norm += expDigamma[topic] * phi[offset + topic];
+        }
+        if (norm == 0) {
+          continue;
+        }
+        final double scale = wordCounts[i] / norm;
+        for (int topic = 0; topic < topicCount; topic++) {
+          totals[topic] += phi[offset + topic] * scale;
+        }
+      }
+      double change = 0;
+      for (int topic = 0; topic < topicCount; topic++) {
+        final double updated = alpha[topic] + expDigamma[topic] * totals[topic];
+        change += Math.abs(updated - gamma[topic]);
+        gamma[topic] = updated;
+      }
+      if (change / topicCount < tolerance) {
+        break;
+      }
+    }
+
+    final double sum = Arrays.stream(gamma).sum();
+    for (int topic = 0; topic < topicCount; topic++) {
+      gamma[topic] /= sum;
+    }
+    return gamma;
+  }
+
+  /** theta for a document with no known words. */
+  private double[] prior() {
+    final double[] theta = new double[topicCount];
+    for (int topic = 0; topic < topicCount; topic++) {
+      theta[topic] = alpha[topic] / alphaSum;
+    }
+    return theta;
+  }
+
+  /**
+   * Draw a topic for the word given the document's other tokens.  probabilities is filled
+   * with the running total, so the draw is a binary search rather than a second pass.
+   */
+  private int draw(int word, int[] counts, double[] probabilities) {
+    final int offset = word * topicCount;
+    double sum = 0;
+    for (int topic = 0; topic < topicCount; topic++) {
+      sum += (counts[topic] + alpha[topic]) * phi[offset + topic];
+      probabilities[topic] = sum;
+    }
+    final double sample = ThreadLocalRandom.current().nextDouble() * sum;
+    int low = 0;
+    int high = topicCount - 1;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (probabilities[mid] > sample) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * The arrays one thread samples or fits a document with, kept between documents.
+   */
+  private static final class Workspace {
+    private int[] words = new int[64];
+    private int[] topics = new int[64];
+    private final int[] counts;
+    private final double[] probabilities;
+    private final double[] totals;
+    private int length;
+
+    Workspace(int topicCount) {
+      counts = new int[topicCount];
+      probabilities = new double[topicCount];
+      totals = new double[topicCount];
+    }
+
+    void clear() {
+      length = 0;
+      Arrays.fill(counts, 0);
+    }
+
+    void add(int word) {
+      if (length == words.length) {
+        words = Arrays.copyOf(words, 2 * length);
+        topics = new int[2 * length];
+      }
+      words[length++] = word;
+    }
+
+    /**
+     * Sort the words and collapse each run of one word into a single entry, with its count
+     * in topics.
+     *
+     * @return the number of distinct words.
+     */
+    int collapse() {
+      Arrays.sort(words, 0, length);
+      int unique = 0;
+      for (int i = 0; i < length; i++) {
+        if (unique > 0 && words[unique - 1] == words[i]) {
+          topics[unique - 1]++;
+        } else {
+          words[unique] = words[i];
+          topics[unique++] = 1;
+        }
+      }
+      return unique;
+    }
+  }
+}
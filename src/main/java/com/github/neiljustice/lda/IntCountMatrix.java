@@ -0,0 +1,69 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ArrayUtils;
+
+import java.util.Arrays;
+
+/**
+ * Counts stored in a flat {@code int[]}.
+ */
+class IntCountMatrix extends CountMatrix {
+  /** May be longer than rows * cols. */
+  private int[] counts;
+
+  IntCountMatrix(int rows, int cols) {
+    super(rows, cols);
+    counts = new int[denseLength(rows, cols)];
+  }
+
+  @Override
+  int get(int row, int col) {
+    return counts[row * cols + col];
+  }
+
+  @Override
+  void set(int row, int col, int value) {
+    counts[row * cols + col] = value;
+  }
+
+  @Override
+  int increment(int row, int col) {
+    return ++counts[row * cols + col];
+  }
+
+  @Override
+  int decrement(int row, int col) {
+    return --counts[row * cols + col];
+  }
+
+  @Override
+  void add(int row, int col, int delta) {
+    counts[row * cols + col] += delta;
+  }
+
+  @Override
+  void clear() {
+    Arrays.fill(counts, 0);
+  }
+
+  @Override
+  CountMatrix grow(int[] runs, long maxCount) {
+    final int length = denseLength(rows + runs.length, cols);
+    if (length > counts.length) {
+      counts = Arrays.copyOf(counts, ArrayUtils.grownLength(counts.length, length));
+    }
+    rows += runs.length;
+    return this;
+  }
+
+  @Override
+  CountMatrix emptyCopy() {
+    return new IntCountMatrix(rows, cols);
+  }
+
+  @Override
+  void copyRows(CountMatrix other, int startRow, int endRow) {
+    final int[] source = ((IntCountMatrix) other).counts;
+    System.arraycopy(source, startRow * cols, counts, startRow * cols, (endRow - startRow) * cols);
+  }
+}
@@ -1,7 +1,8 @@
 package com.github.neiljustice.lda;
 
 import com.github.neiljustice.lda.topic.Topic;
-import com.github.neiljustice.lda.util.MatrixUtils;
+import com.github.neiljustice.lda.util.ArrayUtils;
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -22,34 +23,47 @@ public class LDA {
   public static final int DEFAULT_OPTIMISE_INTERVAL = 40;
   public static final int DEFAULT_PERPLEXITY_CHECK_LAG = 10;
   public static final double DEFAULT_PERPLEXITY_THRESHOLD = 0.0001d;
+  public static final int DEFAULT_MH_STEPS = 2;
+  public static final int DEFAULT_APPEND_CYCLES = 20;
 
   private static final Logger LOGGER = LogManager.getLogger(LDA.class);
 
-  private final Corpus corpus;
+  final Corpus corpus;
   private final Random random = new Random();
   /** number of unique words */
-  private final int wordCount;
+  int wordCount;
   /** Number of docs */
-  private final int docCount;
+  int docCount;
   /** Total number of tokens */
-  private final int tokenCount;
-  private final int topicCount;
-  private final int[] tokensInTopic;
-  private final int[] tokensInDoc;
-  private final int[][] wordsInTopic;
-  private final int[][] topicsInDoc;
-  /** Multinomial dist. of words in topics */
-  private final double[][] phiSum;
+  int tokenCount;
+  final int topicCount;
+  final int[] tokensInTopic;
+  int[] tokensInDoc;
+  /** Count of each word in each topic, indexed (word, topic). */
+  CountMatrix wordsInTopic;
+  /** Count of each topic in each doc, indexed (doc, topic).  Sparse for short docs and many topics. */
+  CountMatrix topicsInDoc;
+  /** Multinomial dist. of words in topics.  May have spare rows, as may each row of thetaSum. */
+  private double[][] phiSum;
   /** Multinomial dist. of topics in docs. */
-  private final double[][] thetaSum;
+  private double[][] thetaSum;
+  private final MatrixView phi = new PhiView();
+  private final MatrixView theta = new ThetaView();
   /** Hyperparameter */
-  private final double[] alpha;
+  final double[] alpha;
   /** Hyperparameter */
-  private final double beta;
-  private final double betaSum;
-  private final GibbsSampler gibbsSampler = new GibbsSampler();
+  final double beta;
+  double betaSum;
+  private SamplerType samplerType = SamplerType.GIBBS;
+  private Sampler sampler;
+  /** Metropolis-Hastings steps per token, for the samplers which use them. */
+  int mhSteps = DEFAULT_MH_STEPS;
+  /** Threads to sample with, for the samplers which run in parallel. */
+  int parallelism = Runtime.getRuntime().availableProcessors();
   private AlphaOptimiser optimiser;
-  private double alphaSum;
+  double alphaSum;
+  /** At least the largest number of tokens of any one word. */
+  private long maxWordRun;
   /** Length of longest doc */
   private int maxLength;
   private int optimiseInterval;
@@ -77,8 +91,9 @@ public class LDA {
 
     tokensInTopic = new int[topicCount];
     tokensInDoc = new int[docCount];
-    wordsInTopic = new int[wordCount][topicCount];
-    topicsInDoc = new int[topicCount][docCount];
+    maxWordRun = maxRun(corpus.wordOffsets());
+    wordsInTopic = CountMatrix.create(wordCount, topicCount, maxWordRun);
+    topicsInDoc = CountMatrix.forRuns(corpus.docOffsets(), topicCount);
 
     phiSum = new double[wordCount][topicCount];
     thetaSum = new double[topicCount][docCount];
@@ -91,6 +106,7 @@ public class LDA {
 
     LOGGER.info(" V : {} D : {} N : {}", wordCount, docCount, tokenCount);
 
+    corpus.allocateTopics(topicCount);
     // Initialises all tokens with a randomly selected topic.
     if (initaliseTopics) {
       for (int i = 0; i < tokenCount; i++) {
@@ -99,24 +115,19 @@ public class LDA {
       }
     }
 
-    // initialises the matrix of word occurrence count in topic,
-    // and the matrix of topic occurrence count in document
-    for (int i = 0; i < tokenCount; i++) {
-      final int word = corpus.word(i);
-      final int topic = corpus.topic(i);
-      final int doc = corpus.doc(i);
-      wordsInTopic[word][topic]++;
-      topicsInDoc[topic][doc]++;
-      tokensInTopic[topic]++;
-      tokensInDoc[doc]++;
-    }
+    recount();
 
-    maxLength = Arrays.stream(tokensInDoc).max().orElse(-1) + 1;
     alpha = initialAlpha;
-    optimiser = new AlphaOptimiser(tokensInDoc, topicCount, maxLength);
+    createOptimiser();
     for (int topic = 0; topic < topicCount; topic++) {
       alphaSum += alpha[topic];
     }
+    sampler = samplerType.create(this);
+  }
+
+  private void createOptimiser() {
+    maxLength = Arrays.stream(tokensInDoc).max().orElse(-1) + 1;
+    optimiser = new AlphaOptimiser(tokensInDoc, topicCount, maxLength);
   }
 
   /**
@@ -129,16 +140,208 @@ public class LDA {
     this(corpus, topicCount, true, generateInitialAlpha(topicCount));
   }
 
+  /**
+   * Constructor to use to carry on training from the topic assignments already held in a
+   * corpus, such as a {@link MappedCorpus} left behind by an earlier run which was stopped
+   * or crashed.  The counts are rebuilt from the assignments; alpha starts again from its
+   * initial value.
+   *
+   * @param corpus a corpus which has been trained on before.
+   */
+  public LDA(Corpus corpus) {
+    this(corpus, assignedTopics(corpus), false, generateInitialAlpha(assignedTopics(corpus)));
+  }
+
+  private static int assignedTopics(Corpus corpus) {
+    if (corpus.topicCount() == 0) {
+      throw new IllegalArgumentException("The corpus has no topic assignments to resume from");
+    }
+    return corpus.topicCount();
+  }
+
   /**
    * Constructor to use to reload an already-trained or partially-trained model.
    *
-   * @param model the trained or partially-trained model.
+   * @param model the trained or partially-trained model, with its theta and documents.
    */
   public LDA(LDAModel model) {
-    this(new Corpus(model.getCorpus()), model.getTopics(), false, model.getAlpha());
+    this(resumableCorpus(model), model.getTopics(), false, model.getAlpha());
     this.samples = model.getSamples();
     this.cycles = model.getCycles();
-    loadParameters(model.getPhi(), model.getTheta());
+    loadParameters(model.getPhiView(), model.getThetaView());
+  }
+
+  private static Corpus resumableCorpus(LDAModel model) {
+    if (model.getThetaView() == null || model.getCorpus().size() == 0) {
+      throw new IllegalArgumentException("The model was saved without the theta and documents to resume from");
+    }
+    return new Corpus(model.getCorpus());
+  }
+
+  /**
+   * The longest run in a set of CSR offsets, which bounds the largest count any one
+   * word or document can contribute to a topic.
+   */
+  private static int maxRun(int[] offsets) {
+    int max = 0;
+    for (int i = 0; i + 1 < offsets.length; i++) {
+      max = Math.max(max, offsets[i + 1] - offsets[i]);
+    }
+    return max;
+  }
+
+  /**
+   * Rebuild the matrix of word occurrence count in topic, and the matrix of
+   * topic occurrence count in document, from the topic assignments in the corpus.
+   */
+  void recount() {
+    Arrays.fill(tokensInTopic, 0);
+    Arrays.fill(tokensInDoc, 0);
+    wordsInTopic.clear();
+    topicsInDoc.clear();
+
+    for (int doc = 0; doc < docCount; doc++) {
+      for (int i = corpus.docStart(doc); i < corpus.docEnd(doc); i++) {
+        final int word = corpus.word(i);
+        final int topic = corpus.topic(i);
+        wordsInTopic.increment(word, topic);
+        topicsInDoc.increment(doc, topic);
+        tokensInTopic[topic]++;
+        tokensInDoc[doc]++;
+      }
+    }
+  }
+
+  /**
+   * Select the sampling engine used by subsequent calls to train().  The default is
+   * {@link SamplerType#GIBBS}.  Engines share the same topic assignments and counts,
+   * so this can be changed between calls to train().
+   *
+   * @param samplerType the sampling engine to use.
+   */
+  public LDA withSampler(SamplerType samplerType) {
+    if (samplerType != SamplerType.HOGWILD && wordsInTopic instanceof AtomicCountMatrix) {
+      // left atomic by HOGWILD, which would cost every other engine an atomic access per count
+      wordsInTopic = ((AtomicCountMatrix) wordsInTopic).narrow(maxWordRun);
+    }
+    this.samplerType = samplerType;
+    sampler = samplerType.create(this);
+    return this;
+  }
+
+  /**
+   * Add documents, and any words they bring with them, to the corpus being trained, then
+   * settle them against the topics learnt so far with {@link #DEFAULT_APPEND_CYCLES} Gibbs
+   * cycles over the new documents alone.
+   *
+   * @param documents preprocessed documents, as given to {@link Corpus#Corpus(List)}.
+   * @see #addDocuments(List, int)
+   */
+  public LDA addDocuments(List<List<String>> documents) {
+    return addDocuments(documents, DEFAULT_APPEND_CYCLES);
+  }
+
+  /**
+   * Add documents, and any words they bring with them, to the corpus being trained, so that a
+   * trained model can take in new documents without being retrained from scratch.
+   * <p>
+   * The corpus, the counts and the phi and theta sums grow in place, in amortised O(new tokens)
+   * for the token and word storage; only per-document arrays such as the document lengths
+   * are copied whole.  The new tokens start on random topics, and are then Gibbs-sampled for
+   * the given number of cycles with every other document held fixed, after which the sums
+   * are filled in for the new documents and words as though they had been there all along.
+   * Calling train() again, with a higher maxCycles, carries on over the whole corpus with the
+   * same sampling engine as before.
+   *
+   * @param documents preprocessed documents, as given to {@link Corpus#Corpus(List)}.
+   * @param cycles Gibbs cycles to run over the new documents alone.
+   */
+  public LDA addDocuments(List<List<String>> documents, int cycles) {
+    final int oldDocCount = docCount;
+    final int oldWordCount = wordCount;
+    final int oldTokenCount = tokenCount;
+    corpus.append(documents);
+    wordCount = corpus.wordCount();
+    docCount = corpus.docCount();
+    tokenCount = corpus.size();
+    betaSum = beta * wordCount;
+
+    final TIntIntHashMap newTokensOfWord = new TIntIntHashMap();
+    for (int i = oldTokenCount; i < tokenCount; i++) {
+      newTokensOfWord.adjustOrPutValue(corpus.word(i), 1, 1);
+    }
+    // a bound rather than the exact largest count, which would mean visiting every word
+    maxWordRun += Arrays.stream(newTokensOfWord.values()).max().orElse(0);
+    final int[] docRuns = new int[docCount - oldDocCount];
+    for (int doc = oldDocCount; doc < docCount; doc++) {
+      docRuns[doc - oldDocCount] = corpus.docEnd(doc) - corpus.docStart(doc);
+    }
+    wordsInTopic = wordsInTopic.grow(new int[wordCount - oldWordCount], maxWordRun);
+    topicsInDoc = topicsInDoc.grow(docRuns, Arrays.stream(docRuns).max().orElse(0));
+    tokensInDoc = Arrays.copyOf(tokensInDoc, docCount);
+
+    phiSum = ArrayUtils.grow(phiSum, wordCount);
+    for (int word = oldWordCount; word < wordCount; word++) {
+      phiSum[word] = new double[topicCount];
+    }
+    for (int topic = 0; topic < topicCount; topic++) {
+      thetaSum[topic] = ArrayUtils.grow(thetaSum[topic], docCount);
+    }
+
+    for (int doc = oldDocCount; doc < docCount; doc++) {
+      for (int i = corpus.docStart(doc); i < corpus.docEnd(doc); i++) {
+        final int topic = random.nextInt(topicCount);
+        corpus.setTopic(i, topic);
+        tokensInTopic[topic]++;
+        tokensInDoc[doc]++;
+        wordsInTopic.increment(corpus.word(i), topic);
+        topicsInDoc.increment(doc, topic);
+      }
+    }
+    createOptimiser();
+
+    final GibbsSampler gibbs = new GibbsSampler(this);
+    for (int cycle = 0; cycle < cycles; cycle++) {
+      gibbs.cycle(oldDocCount, docCount);
+    }
+    if (samples > 0) {
+      estimateParameters(oldDocCount, oldWordCount);
+    }
+    sampler = samplerType.create(this);
+    LOGGER.info("Added {} docs, {} words and {} tokens", docCount - oldDocCount,
+        wordCount - oldWordCount, tokenCount - oldTokenCount);
+    return this;
+  }
+
+  /**
+   * Set the number of Metropolis-Hastings steps taken per token by the samplers which
+   * draw from stale proposal distributions, {@link SamplerType#ALIAS},
+   * {@link SamplerType#LIGHT} and {@link SamplerType#WARP}.  More steps bring each draw
+   * closer to the true conditional, at a proportional cost.  LIGHT alternates word- and
+   * doc-proposals, so should be given an even number of steps; WARP takes this many of each.
+   *
+   * @param steps the number of steps per token.
+   */
+  public LDA withMetropolisHastingsSteps(int steps) {
+    if (steps < 1) {
+      throw new IllegalArgumentException("Metropolis-Hastings steps must be at least 1");
+    }
+    mhSteps = steps;
+    return this;
+  }
+
+  /**
+   * Set the number of threads used by the parallel samplers, {@link SamplerType#PARALLEL},
+   * {@link SamplerType#BLOCK_PARALLEL} and {@link SamplerType#HOGWILD}.  The default is the number of available processors.
+   *
+   * @param threads the number of threads to sample with.
+   */
+  public LDA withParallelism(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    parallelism = threads;
+    return this;
   }
 
   private static double[] generateInitialAlpha(int topicCount) {
@@ -254,7 +457,7 @@ public class LDA {
    * @param topN number of terms to log per topic.
    */
   public void logTopics(int topN) {
-    final List<Topic> topics = LDAUtils.termScore(phi(), corpus.dictionary(), topN);
+    final List<Topic> topics = LDAUtils.termScore(phi, corpus.dictionary(), topN);
     for (Topic topic : topics) {
       LOGGER.info(topic);
     }
@@ -263,7 +466,7 @@ public class LDA {
   /**
    * Get the topics, and the top 10 terms for each topic.
    * <p>
-   * Use phi() to get the raw distibutions indexed by token index rather than string.
+   * Use phiView() to get the raw distibutions indexed by token index rather than string.
    */
   public List<Topic> getTopics() {
     return getTopics(DEFAULT_TOP_WORDS_PER_TOPIC);
@@ -272,16 +475,29 @@ public class LDA {
   /**
    * Get the topics, and the top N terms for each topic.
    * <p>
-   * Use phi() to get the raw distibutions indexed by token index rather than string.
+   * Use phiView() to get the raw distibutions indexed by token index rather than string.
    *
    * @param topN terms per topic.
    */
   public List<Topic> getTopics(int topN) {
-    return LDAUtils.termScore(phi(), corpus.dictionary(), topN);
+    return LDAUtils.termScore(phi, corpus.dictionary(), topN);
   }
 
+  /**
+   * The model as trained so far, with phi and theta copied so further training does not
+   * change it.
+   */
   public LDAModel getModel() {
-    return new LDAModel(corpus, phi(), theta(), alpha, topicCount, samples, cycles);
+    return new LDAModel(corpus, phi(), theta(), alpha.clone(), topicCount, samples, cycles);
+  }
+
+  /**
+   * The model as trained so far, without copying phi or theta.  Like the corpus, they are
+   * views of this instance's running sums, so further training shows through them; use
+   * {@link LDAModel#getPhi()} and {@link LDAModel#getTheta()} to take a snapshot.
+   */
+  public LDAModel getLiveModel() {
+    return new LDAModel(corpus, phi, theta, alpha, topicCount, samples, cycles);
   }
 
   private void cycles() {
@@ -290,7 +506,7 @@ public class LDA {
     for (; cycles < maxCycles; cycles++) {
       final long s = System.nanoTime();
 
-      gibbsSampler.cycle();
+      sampler.cycle();
       if (cycles >= burnLength && cycles % optimiseInterval == 0) {
         optimiseAlpha();
       }
@@ -337,10 +553,10 @@ public class LDA {
 
   private void optimiseAlpha() {
     final int[][] docTopicCountHist = new int[topicCount][maxLength];
-    for (int topic = 0; topic < topicCount; topic++) {
-      for (int doc = 0; doc < docCount; doc++) {
-        final int count = topicsInDoc[topic][doc];
-        docTopicCountHist[topic][count]++;
+    // the optimiser never reads the zero counts, so only the stored entries are needed
+    for (int doc = 0; doc < docCount; doc++) {
+      for (int e = 0; e < topicsInDoc.entryCount(doc); e++) {
+        docTopicCountHist[topicsInDoc.entryCol(doc, e)][topicsInDoc.entryValue(doc, e)]++;
       }
     }
     alphaSum = optimiser.optimiseAlpha(alpha, docTopicCountHist);
@@ -359,15 +575,18 @@ public class LDA {
    * theta sums.
    */
   private void updateParameters() {
-    for (int topic = 0; topic < topicCount; topic++) {
-      for (int doc = 0; doc < docCount; doc++) {
-        thetaSum[topic][doc] += (topicsInDoc[topic][doc] + alpha[topic])
-            / (tokensInDoc[doc] + alphaSum);
+    for (int doc = 0; doc < docCount; doc++) {
+      final double norm = tokensInDoc[doc] + alphaSum;
+      for (int topic = 0; topic < topicCount; topic++) {
+        thetaSum[topic][doc] += alpha[topic] / norm;
+      }
+      for (int e = 0; e < topicsInDoc.entryCount(doc); e++) {
+        thetaSum[topicsInDoc.entryCol(doc, e)][doc] += topicsInDoc.entryValue(doc, e) / norm;
       }
     }
     for (int word = 0; word < wordCount; word++) {
       for (int topic = 0; topic < topicCount; topic++) {
-        phiSum[word][topic] += (wordsInTopic[word][topic] + beta)
+        phiSum[word][topic] += (wordsInTopic.get(word, topic) + beta)
             / (tokensInTopic[topic] + wordCount * beta);
       }
     }
@@ -382,29 +601,47 @@ public class LDA {
    * @return a 2D matrix of size word count * topic count
    */
   public double[][] phi() {
-    final double[][] phi = new double[wordCount][topicCount];
+    return phi.toArray();
+  }
 
-    for (int word = 0; word < wordCount; word++) {
+  /**
+   * phi, indexed [word][topic], computed from the running sums as it is read rather than copied.
+   */
+  public MatrixView phiView() {
+    return phi;
+  }
+
+  /**
+   * Fill in the sums for docs and words from the given ones on, which have not been sampled,
+   * with the current estimate for every sample taken so far.
+   */
+  private void estimateParameters(int fromDoc, int fromWord) {
+    for (int doc = fromDoc; doc < docCount; doc++) {
+      final double norm = tokensInDoc[doc] + alphaSum;
       for (int topic = 0; topic < topicCount; topic++) {
-        phi[word][topic] = phiSum[word][topic] / samples;
+        thetaSum[topic][doc] = samples * (topicsInDoc.get(doc, topic) + alpha[topic]) / norm;
+      }
+    }
+    for (int word = fromWord; word < wordCount; word++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        phiSum[word][topic] = samples * (wordsInTopic.get(word, topic) + beta)
+            / (tokensInTopic[topic] + betaSum);
       }
     }
-
-    return phi;
   }
 
   /**
    * Recreate phiSum and thetaSum from a given phi and theta.
    */
-  private void loadParameters(double[][] phi, double[][] theta) {
+  private void loadParameters(MatrixView phi, MatrixView theta) {
     for (int topic = 0; topic < topicCount; topic++) {
       for (int doc = 0; doc < docCount; doc++) {
-        thetaSum[topic][doc] += theta[topic][doc] * samples;
+        thetaSum[topic][doc] += theta.get(topic, doc) * samples;
       }
     }
     for (int word = 0; word < wordCount; word++) {
       for (int topic = 0; topic < topicCount; topic++) {
-        phiSum[word][topic] += phi[word][topic] * samples;
+        phiSum[word][topic] += phi.get(word, topic) * samples;
       }
     }
   }
@@ -415,26 +652,26 @@ public class LDA {
    * @return a 2D matrix of size topic count * document count
    */
   public double[][] theta() {
-    final double[][] theta = new double[topicCount][docCount];
-
-    for (int topic = 0; topic < topicCount; topic++) {
-      for (int doc = 0; doc < docCount; doc++) {
-        theta[topic][doc] = thetaSum[topic][doc] / samples;
-      }
-    }
+    return theta.toArray();
+  }
 
+  /**
+   * theta, indexed [topic][doc], computed from the running sums as it is read rather than copied.
+   */
+  public MatrixView thetaView() {
     return theta;
   }
 
   public double perplexity() {
     double sum = 0d;
-    for (int token = 0; token < tokenCount; token++) {
-      final int doc = corpus.doc(token);
-      final int topic = corpus.topic(token);
-      final int word = corpus.word(token);
-      final double theta = (topicsInDoc[topic][doc] + alpha[topic]) / (tokensInDoc[doc] + alphaSum);
-      final double phi = (wordsInTopic[word][topic] + beta) / (tokensInTopic[topic] + wordCount * beta);
-      sum += Math.log(phi * theta);
+    for (int doc = 0; doc < docCount; doc++) {
+      for (int token = corpus.docStart(doc); token < corpus.docEnd(doc); token++) {
+        final int topic = corpus.topic(token);
+        final int word = corpus.word(token);
+        final double theta = (topicsInDoc.get(doc, topic) + alpha[topic]) / (tokensInDoc[doc] + alphaSum);
+        final double phi = (wordsInTopic.get(word, topic) + beta) / (tokensInTopic[topic] + wordCount * beta);
+        sum += Math.log(phi * theta);
+      }
     }
 
     return Math.exp(0 - (sum / (double) tokenCount));
@@ -464,11 +701,11 @@ public class LDA {
       throw new IllegalArgumentException("topic probability distribution length must be " + topicCount);
     }
 
-    final double[][] phi = phi();
+    final double[] topicSums = topicSums();
     final List<int[]> docs = new ArrayList<>(numDocs);
 
     for (int i = 0; i < numDocs; i++) {
-      docs.add(generateDoc(phi, topicProbs, Arrays.stream(topicProbs).sum()));
+      docs.add(generateDoc(topicSums, topicProbs, Arrays.stream(topicProbs).sum()));
     }
 
     return docs;
@@ -498,12 +735,12 @@ public class LDA {
       throw new IllegalArgumentException("topic probability distribution length must be " + topicCount);
     }
 
-    final double[][] phi = phi();
+    final double[] topicSums = topicSums();
     final List<String> docs = new ArrayList<>(numDocs);
 
     for (int doc = 0; doc < numDocs; doc++) {
       final StringBuilder builder = new StringBuilder();
-      final int[] raw = generateDoc(phi, topicProbs, Arrays.stream(topicProbs).sum());
+      final int[] raw = generateDoc(topicSums, topicProbs, Arrays.stream(topicProbs).sum());
       for (int word : raw) {
         builder.append(corpus.dictionary().getToken(word));
         builder.append(" ");
@@ -515,50 +752,67 @@ public class LDA {
     return docs;
   }
 
-  private int[] generateDoc(double[][] phi, double[] topicProbs, double topicProbsSum) {
+  private int[] generateDoc(double[] topicSums, double[] topicProbs, double topicProbsSum) {
     final int docLength = Probability.sampleFromPoissonDist(tokensInDoc);
     final int[] doc = new int[docLength];
     for (int i = 0; i < docLength; i++) {
       final int topic = Probability.sampleFromMultinomialDist(topicProbs, topicProbsSum);
-      final double sum = MatrixUtils.sumColumn(phi, topic);
-      final int word = Probability.sampleFromMultinomialDist(phi, topic, sum);
+      final int word = Probability.sampleFromMultinomialDist(phi, topic, topicSums[topic]);
       doc[i] = word;
     }
     return doc;
   }
 
-  private class GibbsSampler {
-
-    public void cycle() {
-      for (int i = 0; i < tokenCount; i++) {
-        final int word = corpus.word(i);
-        final int oldTopic = corpus.topic(i);
-        final int doc = corpus.doc(i);
-        tokensInTopic[oldTopic]--;
-        wordsInTopic[word][oldTopic]--;
-        topicsInDoc[oldTopic][doc]--;
-
-        final int newTopic = sample(word, doc);
-
-        tokensInTopic[newTopic]++;
-        wordsInTopic[word][newTopic]++;
-        topicsInDoc[newTopic][doc]++;
-        corpus.setTopic(i, newTopic);
+  /**
+   * The sum of phi over the words of each topic.
+   */
+  private double[] topicSums() {
+    final double[] sums = new double[topicCount];
+    for (int word = 0; word < wordCount; word++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        sums[topic] += phi.get(word, topic);
       }
     }
+    return sums;
+  }
 
-    private int sample(int word, int doc) {
-      final double[] probabilities = new double[topicCount];
-      double sum = 0;
+  /**
+   * phiSum, divided by the number of samples taken as it is read.
+   */
+  private final class PhiView implements MatrixView {
+    @Override
+    public int rows() {
+      return wordCount;
+    }
 
-      for (int topic = 0; topic < topicCount; topic++) {
-        probabilities[topic] = (topicsInDoc[topic][doc] + alpha[topic])
-            * ((wordsInTopic[word][topic] + beta)
-            / (tokensInTopic[topic] + betaSum));
-        sum += probabilities[topic];
-      }
+    @Override
+    public int cols() {
+      return topicCount;
+    }
+
+    @Override
+    public double get(int row, int col) {
+      return phiSum[row][col] / samples;
+    }
+  }
+
+  /**
+   * thetaSum, divided by the number of samples taken as it is read.
+   */
+  private final class ThetaView implements MatrixView {
+    @Override
+    public int rows() {
+      return topicCount;
+    }
+
+    @Override
+    public int cols() {
+      return docCount;
+    }
 
-      return Probability.sampleFromMultinomialDist(probabilities, sum);
+    @Override
+    public double get(int row, int col) {
+      return thetaSum[row][col] / samples;
     }
   }
-}
\ No newline at end of file
+}
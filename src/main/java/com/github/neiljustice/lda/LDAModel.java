@@ -2,14 +2,15 @@ package com.github.neiljustice.lda;
 
 import com.github.neiljustice.lda.topic.Topic;
 
+import java.nio.file.Path;
 import java.util.List;
 
 public class LDAModel {
 
   private final Corpus corpus;
 
-  private final double[][] phi;
-  private final double[][] theta;
+  private final MatrixView phi;
+  private final MatrixView theta;
   private final double[] alpha;
 
   private final int topics;
@@ -17,6 +18,13 @@ public class LDAModel {
   private final int cycles;
 
   public LDAModel(Corpus corpus, double[][] phi, double[][] theta, double[] alpha, int topics, int samples, int cycles) {
+    this(corpus, MatrixView.of(phi), theta == null ? null : MatrixView.of(theta), alpha, topics, samples, cycles);
+  }
+
+  /**
+   * @param theta null if the model has no document-topic distributions.
+   */
+  public LDAModel(Corpus corpus, MatrixView phi, MatrixView theta, double[] alpha, int topics, int samples, int cycles) {
     this.corpus = corpus;
     this.phi = phi;
     this.theta = theta;
@@ -30,11 +38,31 @@ public class LDAModel {
     return corpus;
   }
 
+  /**
+   * A copy of phi, indexed [word][topic].
+   */
   public double[][] getPhi() {
-    return phi;
+    return phi.toArray();
   }
 
+  /**
+   * A copy of theta, indexed [topic][doc], or null if the model was saved without it.
+   */
   public double[][] getTheta() {
+    return theta == null ? null : theta.toArray();
+  }
+
+  /**
+   * phi, indexed [word][topic], without copying it.
+   */
+  public MatrixView getPhiView() {
+    return phi;
+  }
+
+  /**
+   * theta, indexed [topic][doc], without copying it, or null if the model was saved without it.
+   */
+  public MatrixView getThetaView() {
     return theta;
   }
 
@@ -64,4 +92,19 @@ public class LDAModel {
   public List<Topic> termScore(int topN) {
     return LDAUtils.termScore(phi, corpus.dictionary(), topN);
   }
+
+  /**
+   * Save the model losslessly, with its theta and documents, to a single file.  Use
+   * {@link ModelFile} to save it more compactly.
+   */
+  public void save(Path file) {
+    new ModelFile().write(this, file);
+  }
+
+  /**
+   * Map a model saved by {@link #save(Path)} or {@link ModelFile}.
+   */
+  public static LDAModel load(Path file) {
+    return ModelFile.read(file);
+  }
 }
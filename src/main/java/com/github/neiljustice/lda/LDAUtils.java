@@ -2,17 +2,23 @@ package com.github.neiljustice.lda;
 
 import com.github.neiljustice.lda.topic.TermScore;
 import com.github.neiljustice.lda.topic.Topic;
-import com.github.neiljustice.lda.util.BiDirectionalLookup;
+import com.github.neiljustice.lda.util.ThreadUtils;
+import com.github.neiljustice.lda.util.Vocabulary;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * LDA utilities
  */
 public class LDAUtils {
+  private static final double LN_2 = Math.log(2);
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+  /** Shared by all callers; its threads exit when idle, so it is never shut down. */
+  private static final ExecutorService EXECUTOR = ThreadUtils.newDaemonPool(PARALLELISM, "lda-term-score");
 
   private LDAUtils() {
     // Prevent static class instantiation.
@@ -22,15 +28,22 @@ public class LDAUtils {
    * Find the geometric mean of a 2D matrix.
    */
   public static double[] geometricMean(double[][] matrix) {
-    final int height = matrix.length;
-    final int width = matrix[0].length;
+    return geometricMean(MatrixView.of(matrix));
+  }
+
+  /**
+   * Find the geometric mean of each row of a matrix.
+   */
+  public static double[] geometricMean(MatrixView matrix) {
+    final int height = matrix.rows();
+    final int width = matrix.cols();
 
     final double[] geometricMean = new double[height];
 
     for (int i = 0; i < height; i++) {
       double sumlog = 0d;
       for (int j = 0; j < width; j++) {
-        sumlog += Math.log(matrix[i][j]);
+        sumlog += Math.log(matrix.get(i, j));
       }
       geometricMean[i] = Math.exp(sumlog / width);
     }
@@ -48,22 +61,131 @@ public class LDAUtils {
    * @param dictionary dictionary for conversion from word indexes back to strings.
    * @param topN       the top N words to return per topic. If this is <= 0, all words are returned.
    */
-  public static List<Topic> termScore(double[][] phi, BiDirectionalLookup<String> dictionary, int topN) {
-    final int wordCount = phi.length;
-    final int topicCount = phi[0].length;
+  public static List<Topic> termScore(double[][] phi, Vocabulary dictionary, int topN) {
+    return termScore(MatrixView.of(phi), dictionary, topN);
+  }
+
+  /**
+   * {@link #termScore(double[][], Vocabulary, int)} read straight from a view of phi,
+   * indexed [word][topic], without copying it.
+   * <p>
+   * phi is read once, in blocks of words scored in parallel.  Each block keeps the best N
+   * words of every topic in bounded min-heaps of primitive scores, the blocks' heaps are
+   * merged, and only the winners are looked up in the dictionary.  Where words tie on score
+   * for the last place, the lower word index wins.
+   */
+  public static List<Topic> termScore(MatrixView phi, Vocabulary dictionary, int topN) {
+    final int wordCount = phi.rows();
+    final int topicCount = phi.cols();
+    final int limit = topN > 0 ? Math.min(topN, wordCount) : wordCount;
+
+    final int blocks = Math.max(1, Math.min(PARALLELISM, wordCount / 4096));
+    final List<Callable<TopScores[]>> tasks = new ArrayList<>(blocks);
+    for (int block = 0; block < blocks; block++) {
+      final int from = (int) ((long) wordCount * block / blocks);
+      final int to = (int) ((long) wordCount * (block + 1) / blocks);
+      tasks.add(() -> topTerms(phi, from, to, limit));
+    }
+    final List<TopScores[]> results = run(tasks);
+    final TopScores[] merged;
+    if (results.size() == 1) {
+      merged = results.get(0);
+    } else {
+      // a block's heaps hold no more than its own words, so are merged into full-size ones
+      merged = new TopScores[topicCount];
+      for (int topic = 0; topic < topicCount; topic++) {
+        merged[topic] = new TopScores(limit);
+        for (TopScores[] result : results) {
+          merged[topic].offerAll(result[topic]);
+        }
+      }
+    }
+
     final List<Topic> topics = new ArrayList<>(topicCount);
-    final double[] geometricMean = geometricMean(phi);
-    topN = topN > 0 ? Math.min(topN, wordCount) : wordCount;
+    for (int topic = 0; topic < topicCount; topic++) {
+      final TopScores heap = merged[topic];
+      final List<TermScore> terms = new ArrayList<>(heap.size());
+      for (int i = 0; i < heap.size(); i++) {
+        terms.add(new TermScore(dictionary.getToken(heap.index(i)), heap.score(i)));
+      }
+      terms.sort(TermScore.COMPARATOR);
+      topics.add(new Topic(topic, terms));
+    }
+    return topics;
+  }
 
+  /**
+   * The best words of every topic among words [from, to).  A score is
+   * p * (log p - log mean), and log p is at most 0, so p * -log mean bounds it; a word whose
+   * bound cannot beat the worst word kept for a topic is not offered to it, and its log is
+   * never taken.
+   */
+  private static TopScores[] topTerms(MatrixView phi, int from, int to, int limit) {
+    final int topicCount = phi.cols();
+    final TopScores[] heaps = new TopScores[topicCount];
     for (int topic = 0; topic < topicCount; topic++) {
-      final TreeSet<TermScore> termScores = new TreeSet<>(TermScore.COMPARATOR);
-      for (int word = 0; word < wordCount; word++) {
-        final double score = phi[word][topic] * Math.log(phi[word][topic] / geometricMean[word]);
-        termScores.add(new TermScore(dictionary.getToken(word), score));
+      heaps[topic] = new TopScores(Math.min(limit, to - from));
+    }
+    final double[] row = new double[topicCount];
+    for (int word = from; word < to; word++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        row[topic] = phi.get(word, topic);
+      }
+      final double logMean = logGeometricMean(row);
+
+      for (int topic = 0; topic < topicCount; topic++) {
+        final TopScores heap = heaps[topic];
+        final double p = row[topic];
+        if (heap.isFull() && !(p * -logMean > heap.worst())) {
+          continue;
+        }
+        // p log p tends to 0 as p does
+        heap.offer(word, p > 0 ? p * (Math.log(p) - logMean) : 0);
       }
-      topics.add(new Topic(topic, termScores.stream().limit(topN).collect(Collectors.toList())));
     }
+    return heaps;
+  }
 
-    return topics;
+  /**
+   * The mean of the logs of the row, taking one log rather than one per entry: the
+   * exponents of the entries are summed exactly, and their mantissas, each in [1, 2), are
+   * multiplied in runs short enough not to overflow.  Rows holding zeros, subnormals or
+   * non-finite values fall back to summing logs.
+   */
+  private static double logGeometricMean(double[] row) {
+    long exponents = 0;
+    double mantissas = 1d;
+    for (int i = 0; i < row.length; i++) {
+      final long bits = Double.doubleToRawLongBits(row[i]);
+      final int exponent = (int) (bits >>> 52) & 0x7ff;
+      if (exponent == 0 || exponent == 0x7ff || bits < 0) {
+        double sumlog = 0d;
+        for (double p : row) {
+          sumlog += Math.log(p);
+        }
+        return sumlog / row.length;
+      }
+      exponents += exponent - 1023;
+      mantissas *= Double.longBitsToDouble((bits & 0x000fffffffffffffL) | 0x3ff0000000000000L);
+      // at most 2^64 after 64 entries, then brought back into [1, 2)
+      if ((i & 63) == 63) {
+        exponents += Math.getExponent(mantissas);
+        mantissas = Math.scalb(mantissas, -Math.getExponent(mantissas));
+      }
+    }
+    return (Math.log(mantissas) + exponents * LN_2) / row.length;
+  }
+
+  private static <T> List<T> run(List<Callable<T>> tasks) {
+    if (tasks.size() == 1) {
+      try {
+        return Collections.singletonList(tasks.get(0).call());
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return ThreadUtils.invokeAll(EXECUTOR, tasks);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,156 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.AliasTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * LightLDA sampler, as laid out in Yuan et al., 2015, "LightLDA: Big Topic Models on Modest
+ * Computer Clusters".
+ * <p>
+ * Rather than drawing from the full conditional, each token takes a short Metropolis-Hastings
+ * chain which alternates between two cheap proposals:
+ * <ul>
+ * <li>the word-proposal, (beta + n_wt) / (betaSum + n_t), drawn from a per-word alias table
+ * which is rebuilt after it has been drawn from K times;</li>
+ * <li>the doc-proposal, n_td + alpha_t, drawn by picking the topic of a random token in the
+ * same document, or from an alias table over alpha.</li>
+ * </ul>
+ * Neither the proposals nor the acceptance tests depend on the number of topics, so each
+ * token costs O(1) amortised however large K is.
+ */
+class LightSampler implements Sampler {
+  private static final Logger LOGGER = LogManager.getLogger(LightSampler.class);
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  private final AliasTable[] wordTables;
+  /** Draws taken from each word's alias table since it was last built. */
+  private final int[] draws;
+  private final AliasTable alphaTable;
+  private final double[] tableWeights;
+  private final int[] tableWork;
+  private long proposals;
+  private long accepted;
+
+  LightSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+
+    wordTables = new AliasTable[lda.wordCount];
+    draws = new int[lda.wordCount];
+    alphaTable = new AliasTable(topicCount);
+    tableWeights = new double[topicCount];
+    tableWork = new int[topicCount];
+  }
+
+  @Override
+  public void cycle() {
+    proposals = 0;
+    accepted = 0;
+    // alpha only changes between cycles, when it is optimised
+    alphaTable.build(lda.alpha, topicCount, tableWork);
+
+    for (int doc = 0; doc < lda.docCount; doc++) {
+      final int start = corpus.docStart(doc);
+      final int end = corpus.docEnd(doc);
+
+      for (int i = start; i < end; i++) {
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        lda.tokensInTopic[oldTopic]--;
+        lda.wordsInTopic.decrement(word, oldTopic);
+        lda.topicsInDoc.decrement(doc, oldTopic);
+
+        final int newTopic = sample(word, doc, oldTopic, start, end);
+
+        lda.tokensInTopic[newTopic]++;
+        lda.wordsInTopic.increment(word, newTopic);
+        lda.topicsInDoc.increment(doc, newTopic);
+        corpus.setTopic(i, newTopic);
+      }
+    }
+
+    LOGGER.info("MH acceptance rate: {}", acceptanceRate());
+  }
+
+  /**
+   * The proportion of Metropolis-Hastings proposals accepted during the last cycle.
+   */
+  double acceptanceRate() {
+    return proposals == 0 ? 0d : (double) accepted / proposals;
+  }
+
+  /**
+   * Even steps use the word-proposal and odd steps the doc-proposal.  The counts exclude the
+   * token being sampled, but its slot in the corpus still holds oldTopic, which the
+   * doc-proposal can pick.
+   */
+  private int sample(int word, int doc, int oldTopic, int start, int end) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final AliasTable wordTable = table(word);
+    final int docLength = end - start;
+    int current = oldTopic;
+
+    for (int step = 0; step < lda.mhSteps; step++) {
+      final int proposal;
+      final double ratio;
+      if (step % 2 == 0) {
+        proposal = wordTable.sample();
+        draws[word]++;
+        ratio = (target(word, doc, proposal) * wordTable.weight(current))
+            / (target(word, doc, current) * wordTable.weight(proposal));
+      } else {
+        if (random.nextDouble() * (docLength + lda.alphaSum) < docLength) {
+          proposal = corpus.topic(start + random.nextInt(docLength));
+        } else {
+          proposal = alphaTable.sample();
+        }
+        ratio = (target(word, doc, proposal) * docProposal(doc, oldTopic, current))
+            / (target(word, doc, current) * docProposal(doc, oldTopic, proposal));
+      }
+
+      proposals++;
+      if (proposal == current || ratio >= 1d || random.nextDouble() < ratio) {
+        current = proposal;
+        accepted++;
+      }
+    }
+
+    return current;
+  }
+
+  /**
+   * The unnormalised true conditional of the topic.
+   */
+  private double target(int word, int doc, int topic) {
+    return (lda.topicsInDoc.get(doc, topic) + lda.alpha[topic])
+        * (lda.wordsInTopic.get(word, topic) + lda.beta)
+        / (lda.tokensInTopic[topic] + lda.betaSum);
+  }
+
+  private double docProposal(int doc, int oldTopic, int topic) {
+    return lda.topicsInDoc.get(doc, topic) + (topic == oldTopic ? 1 : 0) + lda.alpha[topic];
+  }
+
+  private AliasTable table(int word) {
+    AliasTable table = wordTables[word];
+    if (table == null) {
+      table = new AliasTable(topicCount);
+      wordTables[word] = table;
+    } else if (draws[word] < topicCount) {
+      return table;
+    }
+
+    for (int topic = 0; topic < topicCount; topic++) {
+      tableWeights[topic] = (lda.wordsInTopic.get(word, topic) + lda.beta) / (lda.tokensInTopic[topic] + lda.betaSum);
+    }
+    table.build(tableWeights, topicCount, tableWork);
+    draws[word] = 0;
+    return table;
+  }
+}
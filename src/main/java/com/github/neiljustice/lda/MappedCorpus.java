@@ -0,0 +1,395 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.FileUtils;
+import com.github.neiljustice.lda.util.MappedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A corpus whose word ids and topic assignments live in memory-mapped files in a directory,
+ * rather than on the heap, so it can be larger than the heap: the OS pages the tokens in and
+ * out as the samplers sweep through them.  Only the dictionary and the document offsets are
+ * held on the heap.
+ * <p>
+ * Topic assignments are written straight through to the mapped file, so if training stops
+ * part way, even by the JVM crashing, the directory can be reopened with {@link #open(Path)}
+ * and training carried on with {@link LDA#LDA(Corpus)}.  Call {@link #flush()} at a checkpoint
+ * to make sure the assignments have reached the disk, and so survive the machine going down.
+ * <p>
+ * The samplers other than WARP, LIGHT and BLOCK_PARALLEL keep nothing per token on the heap;
+ * those three build per-token indexes, so need room for an int per token.
+ */
+public class MappedCorpus extends Corpus {
+  private static final int VERSION = 2;
+  /** Version 1 headers have no hashBits. */
+  private static final int V1 = 1;
+  private static final String HEADER = "header";
+  private static final String DICTIONARY = "dictionary";
+  private static final String DOCS = "docs";
+  private static final String WORDS = "words";
+  private static final String TOPICS = "topics";
+  /** Bytes buffered per write while building the files. */
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  private final Path dir;
+  private final int wordWidth;
+  /** Null until the number of topics is known. */
+  private MappedIntArray topics;
+  private int topicCount;
+
+  private MappedCorpus(Path dir, int[] docOffsets, Vocabulary dictionary,
+                       MappedIntArray words, MappedIntArray topics, int topicCount) {
+    super(words, docOffsets, dictionary);
+    this.dir = dir;
+    wordWidth = words.width();
+    this.topics = topics;
+    this.topicCount = topicCount;
+  }
+
+  /**
+   * Write a corpus, along with any topic assignments it holds, to a directory and map it.
+   */
+  public static MappedCorpus write(Corpus corpus, Path dir) {
+    // copied by id, as the words of a hashed dictionary are bucket labels rather than words
+    try (Writer writer = new Writer(dir, corpus.dictionary())) {
+      for (int doc = 0; doc < corpus.docCount(); doc++) {
+        writer.add(corpus, doc);
+      }
+    }
+
+    final MappedCorpus mapped = open(dir);
+    if (corpus.topicCount() > 0) {
+      mapped.allocateTopics(corpus.topicCount());
+      for (int i = 0; i < corpus.size(); i++) {
+        mapped.setTopic(i, corpus.topic(i));
+      }
+      mapped.flush();
+    }
+    return mapped;
+  }
+
+  /**
+   * Map a corpus written by {@link Writer} or {@link #write(Corpus, Path)}, along with the
+   * topic assignments it held when last used.
+   */
+  public static MappedCorpus open(Path dir) {
+    try (DataInputStream header = input(dir.resolve(HEADER))) {
+      final int version = header.readInt();
+      if (version != VERSION && version != V1) {
+        throw new IllegalStateException("Unknown corpus version " + version + " in " + dir);
+      }
+      final int docCount = header.readInt();
+      final int wordCount = header.readInt();
+      final int tokenCount = header.readInt();
+      final int wordWidth = header.readInt();
+      final int topicCount = header.readInt();
+      final int hashBits = version == V1 ? 0 : header.readInt();
+      final Vocabulary dictionary = readDictionary(dir.resolve(DICTIONARY), wordCount, hashBits);
+
+      final int[] docOffsets = new int[docCount + 1];
+      try (FileChannel channel = FileChannel.open(dir.resolve(DOCS), StandardOpenOption.READ)) {
+        final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4L * docOffsets.length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(docOffsets);
+      }
+      if (docOffsets[docCount] != tokenCount) {
+        throw new IllegalStateException("Corpus in " + dir + " is incomplete");
+      }
+
+      final MappedIntArray words;
+      try (FileChannel channel = FileChannel.open(dir.resolve(WORDS), StandardOpenOption.READ)) {
+        words = MappedIntArray.map(channel, 0, tokenCount, wordWidth, FileChannel.MapMode.READ_ONLY);
+      }
+      final MappedIntArray topics = topicCount == 0 ? null : mapTopics(dir.resolve(TOPICS), tokenCount, topicCount);
+      return new MappedCorpus(dir, docOffsets, dictionary, words, topics, topicCount);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * A mapped corpus cannot grow; copy it onto the heap with {@link Corpus#Corpus(Corpus)} to
+   * add documents.
+   */
+  @Override
+  void append(List<List<String>> documents) {
+    throw new IllegalStateException("Documents cannot be added to a mapped corpus");
+  }
+
+  /**
+   * Make room for topic assignments up to topicCount - 1, in the topics file, keeping any
+   * existing assignments which fit.
+   */
+  @Override
+  void allocateTopics(int topicCount) {
+    final MappedIntArray old = topics;
+    if (old == null || old.width() != MappedIntArray.widthFor(topicCount - 1)) {
+      // built beside the old file and then moved over it, so a crash leaves one or the other
+      final Path next = dir.resolve(TOPICS + ".next");
+      try {
+        Files.deleteIfExists(next);
+        topics = mapTopics(next, size(), topicCount);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      copyTopics(old, topics, topicCount);
+      topics.force();
+      FileUtils.moveAtomically(next, dir.resolve(TOPICS));
+    } else if (topicCount < this.topicCount) {
+      copyTopics(old, topics, topicCount);
+    }
+    this.topicCount = topicCount;
+    writeHeader(dir, docCount(), wordCount(), size(), wordWidth, topicCount, dictionary().hashBits());
+  }
+
+  private void copyTopics(MappedIntArray from, MappedIntArray to, int topicCount) {
+    if (from != null) {
+      for (int i = 0; i < size(); i++) {
+        to.set(i, Math.min(from.get(i), topicCount - 1));
+      }
+    }
+  }
+
+  @Override
+  int topicCount() {
+    return topicCount;
+  }
+
+  /**
+   * Safe to call from several threads at once, as long as they set different tokens.
+   */
+  @Override
+  public void setTopic(int i, int topic) {
+    if (topics == null) {
+      throw new IllegalStateException("Topics can only be set once the corpus is given to an LDA");
+    }
+    topics.set(i, topic);
+  }
+
+  @Override
+  public int topic(int i) {
+    return topics == null ? -1 : topics.get(i);
+  }
+
+  /**
+   * Wait until the topic assignments made so far have reached the disk.
+   */
+  public void flush() {
+    if (topics != null) {
+      topics.force();
+    }
+  }
+
+  private static MappedIntArray mapTopics(Path file, int tokenCount, int topicCount) throws IOException {
+    final int width = MappedIntArray.widthFor(topicCount - 1);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return MappedIntArray.map(channel, 0, tokenCount, width, FileChannel.MapMode.READ_WRITE);
+    }
+  }
+
+  private static void writeHeader(Path dir, int docCount, int wordCount, int tokenCount,
+                                  int wordWidth, int topicCount, int hashBits) {
+    final Path next = dir.resolve(HEADER + ".next");
+    try (DataOutputStream out = output(next)) {
+      out.writeInt(VERSION);
+      out.writeInt(docCount);
+      out.writeInt(wordCount);
+      out.writeInt(tokenCount);
+      out.writeInt(wordWidth);
+      out.writeInt(topicCount);
+      out.writeInt(hashBits);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    FileUtils.moveAtomically(next, dir.resolve(HEADER));
+  }
+
+  /**
+   * Write each word, or bucket label if hashed, as a UTF string.  Shared with
+   * {@link ChunkedCorpus}.
+   */
+  static void writeDictionary(Path file, Vocabulary dictionary) throws IOException {
+    try (DataOutputStream out = output(file)) {
+      for (int word = 0; word < dictionary.size(); word++) {
+        out.writeUTF(dictionary.getToken(word));
+      }
+    }
+  }
+
+  static Vocabulary readDictionary(Path file, int wordCount, int hashBits) throws IOException {
+    final ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+    final int[] offsets = new int[wordCount + 1];
+    try (DataInputStream in = input(file)) {
+      for (int word = 0; word < wordCount; word++) {
+        final byte[] bytes = in.readUTF().getBytes(StandardCharsets.UTF_8);
+        utf8.write(bytes, 0, bytes.length);
+        offsets[word + 1] = utf8.size();
+      }
+    }
+    return Vocabulary.fromUtf8(utf8.toByteArray(), offsets, hashBits);
+  }
+
+  private static DataInputStream input(Path file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+  }
+
+  private static DataOutputStream output(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+  }
+
+  /**
+   * Writes a corpus to a directory one document at a time, so that it never has to fit in the
+   * heap; only the dictionary and one int per document are held.  The corpus is complete once
+   * the writer is closed, and can then be opened with {@link MappedCorpus#open(Path)}.
+   * <p>
+   * Word ids are written as ints as they arrive, and narrowed to the fewest bytes the
+   * vocabulary allows in one sequential pass on close.
+   */
+  public static final class Writer implements Closeable {
+    private final Path dir;
+    /** Null if copying a corpus by id. */
+    private final Vocabulary.Builder dictionary;
+    /** The dictionary of the corpus being copied, or null if words are added as strings. */
+    private final Vocabulary copied;
+    private final TIntArrayList docOffsets = new TIntArrayList();
+    private final FileChannel ids;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private int tokenCount;
+    private boolean closed;
+
+    public Writer(Path dir) {
+      this(dir, new Vocabulary.Builder());
+    }
+
+    /**
+     * @param dictionary assigns the words their ids, such as a builder from
+     *                   {@link Vocabulary.Builder#hashing(int, int)}.
+     */
+    public Writer(Path dir, Vocabulary.Builder dictionary) {
+      this(dir, dictionary, null);
+    }
+
+    private Writer(Path dir, Vocabulary copied) {
+      this(dir, null, copied);
+    }
+
+    private Writer(Path dir, Vocabulary.Builder dictionary, Vocabulary copied) {
+      this.dir = dir;
+      this.dictionary = dictionary;
+      this.copied = copied;
+      try {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(HEADER));
+        Files.deleteIfExists(dir.resolve(TOPICS));
+        ids = FileChannel.open(dir.resolve(WORDS + ".ids"), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      docOffsets.add(0);
+    }
+
+    public void add(List<String> document) {
+      for (String token : document) {
+        put(dictionary.add(token));
+      }
+      endDocument(document.size());
+    }
+
+    private void add(Corpus corpus, int doc) {
+      for (int i = corpus.docStart(doc); i < corpus.docEnd(doc); i++) {
+        put(corpus.word(i));
+      }
+      endDocument(corpus.docEnd(doc) - corpus.docStart(doc));
+    }
+
+    private void put(int word) {
+      if (!buffer.hasRemaining()) {
+        FileUtils.drain(ids, buffer);
+      }
+      buffer.putInt(word);
+    }
+
+    private void endDocument(int length) {
+      tokenCount = Math.addExact(tokenCount, length);
+      docOffsets.add(tokenCount);
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      final Vocabulary vocabulary = copied == null ? dictionary.build() : copied;
+      final int width = MappedIntArray.widthFor(Math.max(0, vocabulary.size() - 1));
+      try {
+        FileUtils.drain(ids, buffer);
+        ids.close();
+        narrowWords(width);
+        writeDocs();
+        writeDictionary(dir.resolve(DICTIONARY), vocabulary);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      // written last, so a corpus whose writer did not finish cannot be opened
+      writeHeader(dir, docOffsets.size() - 1, vocabulary.size(), tokenCount, width, 0, vocabulary.hashBits());
+    }
+
+    private void narrowWords(int width) throws IOException {
+      final Path idsFile = dir.resolve(WORDS + ".ids");
+      if (width == 4) {
+        FileUtils.moveAtomically(idsFile, dir.resolve(WORDS));
+        return;
+      }
+      final MappedIntArray wide;
+      try (FileChannel channel = FileChannel.open(idsFile, StandardOpenOption.READ)) {
+        wide = MappedIntArray.map(channel, 0, tokenCount, 4, FileChannel.MapMode.READ_ONLY);
+      }
+      try (FileChannel out = FileChannel.open(dir.resolve(WORDS), StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        for (int i = 0; i < tokenCount; i++) {
+          if (buffer.remaining() < width) {
+            FileUtils.drain(out, buffer);
+          }
+          if (width == 1) {
+            buffer.put((byte) wide.get(i));
+          } else {
+            buffer.putChar((char) wide.get(i));
+          }
+        }
+        FileUtils.drain(out, buffer);
+      }
+      Files.delete(idsFile);
+    }
+
+    private void writeDocs() throws IOException {
+      try (FileChannel out = FileChannel.open(dir.resolve(DOCS), StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        for (int doc = 0; doc < docOffsets.size(); doc++) {
+          if (!buffer.hasRemaining()) {
+            FileUtils.drain(out, buffer);
+          }
+          buffer.putInt(docOffsets.getQuick(doc));
+        }
+        FileUtils.drain(out, buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.MappedSegments;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A matrix read in place from a mapped file, row-major, in one of the {@link ModelFile.Encoding}s.
+ * Quantised values are decoded as min + code * scale, with a min and scale per row.
+ */
+final class MappedMatrixView implements MatrixView {
+  private final ModelFile.Encoding encoding;
+  private final int rows;
+  private final int cols;
+  private final int widthShift;
+  private final float[] mins;
+  private final float[] scales;
+  private final MappedByteBuffer[] segments;
+
+  private MappedMatrixView(ModelFile.Encoding encoding, int rows, int cols, float[] mins,
+                           float[] scales, MappedByteBuffer[] segments) {
+    this.encoding = encoding;
+    this.rows = rows;
+    this.cols = cols;
+    widthShift = Integer.numberOfTrailingZeros(encoding.width);
+    this.mins = mins;
+    this.scales = scales;
+    this.segments = segments;
+  }
+
+  /**
+   * Map a matrix written by {@link ModelFile} at the given position of a file.  The mins and
+   * scales of a quantised matrix are read onto the heap; the values stay in the file.
+   */
+  static MappedMatrixView map(FileChannel channel, long position, ModelFile.Encoding encoding,
+                              int rows, int cols) {
+    float[] mins = null;
+    float[] scales = null;
+    if (encoding.quantised) {
+      mins = new float[rows];
+      scales = new float[rows];
+      final MappedByteBuffer[] params = MappedSegments.map(channel, position, 8L * rows,
+          FileChannel.MapMode.READ_ONLY);
+      for (int row = 0; row < rows; row++) {
+        mins[row] = getFloat(params, 4L * row);
+        scales[row] = getFloat(params, 4L * (rows + row));
+      }
+      position += 8L * rows;
+    }
+    final MappedByteBuffer[] segments = MappedSegments.map(channel, position,
+        (long) rows * cols * encoding.width, FileChannel.MapMode.READ_ONLY);
+    return new MappedMatrixView(encoding, rows, cols, mins, scales, segments);
+  }
+
+  private static float getFloat(MappedByteBuffer[] segments, long position) {
+    return segments[(int) (position >>> MappedSegments.SEGMENT_SHIFT)]
+        .getFloat((int) position & MappedSegments.SEGMENT_MASK);
+  }
+
+  @Override
+  public int rows() {
+    return rows;
+  }
+
+  @Override
+  public int cols() {
+    return cols;
+  }
+
+  @Override
+  public double get(int row, int col) {
+    final long position = ((long) row * cols + col) << widthShift;
+    final MappedByteBuffer segment = segments[(int) (position >>> MappedSegments.SEGMENT_SHIFT)];
+    final int offset = (int) position & MappedSegments.SEGMENT_MASK;
+    switch (encoding) {
+      case FLOAT64:
+        return segment.getDouble(offset);
+      case FLOAT32:
+        return segment.getFloat(offset);
+      case QUANTISED_16:
+        return mins[row] + segment.getChar(offset) * (double) scales[row];
+      default:
+        return mins[row] + (segment.get(offset) & 0xFF) * (double) scales[row];
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.github.neiljustice.lda;
+
+/**
+ * A read-only view of a matrix of doubles, wherever its values are held.
+ */
+public interface MatrixView {
+
+  /**
+   * A view of an array, indexed [row][col].  The array is not copied, so later changes to it
+   * show through.
+   */
+  static MatrixView of(double[][] array) {
+    return new ArrayMatrixView(array);
+  }
+
+  int rows();
+
+  int cols();
+
+  double get(int row, int col);
+
+  /**
+   * Copy the values into a new array, indexed [row][col].
+   */
+  default double[][] toArray() {
+    final double[][] array = new double[rows()][cols()];
+    for (int row = 0; row < rows(); row++) {
+      for (int col = 0; col < cols(); col++) {
+        array[row][col] = get(row, col);
+      }
+    }
+    return array;
+  }
+}
@@ -0,0 +1,285 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.FileUtils;
+import com.github.neiljustice.lda.util.PackedIntArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves an {@link LDAModel} to a single binary file, and maps it back.
+ * <p>
+ * phi and theta, which dominate the size of a model, can be written as doubles, as floats, or
+ * quantised to 16 or 8 bits; theta and the training documents can be left out altogether, for
+ * a model which is only to be served.  The dictionary is always kept.  Reading a model maps
+ * the file, so phi and theta are read in place from the page cache rather than copied onto
+ * the heap, and a model of several GB opens at once.
+ * <p>
+ * Layout, all little-endian, with each section starting on an 8-byte boundary:
+ * <pre>
+ *   header    magic "LDAMODEL", then version, encoding, topicCount, wordCount, docCount,
+ *             samples, cycles, hasTheta, hasDocuments and a pad as ints, then the offsets of
+ *             alpha, phi, theta (-1 if absent) and the corpus as longs
+ *   alpha     double[topicCount]
+ *   phi       wordCount x topicCount, row-major, in the encoding
+ *   theta     topicCount x docCount, row-major, in the encoding, if present
+ *   corpus    in the {@link CorpusFile} layout; with no documents if they were left out
+ * </pre>
+ * A quantised matrix starts with a float min and then a float scale for every row, and its
+ * values are decoded as min + code * scale.  Each row's smallest value decodes to itself
+ * rounded to a float, so a probability decodes to zero only if it is below the smallest
+ * float.  Any value is within half a step, (row max - row min) / (2 * levels), plus 2^-23
+ * of the row max for the float rounding of the min and scale.
+ */
+public final class ModelFile {
+  private static final long MAGIC = 0x4c45444f4d41444cL; // "LDAMODEL", read little-endian
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 8 + 10 * 4 + 4 * 8;
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  /**
+   * How the values of phi and theta are stored.
+   */
+  public enum Encoding {
+    /** Exact. */
+    FLOAT64(8, false),
+    FLOAT32(4, false),
+    /** Within (row max - row min) / 131070 + 2^-23 * row max of the original value. */
+    QUANTISED_16(2, true),
+    /** Within (row max - row min) / 510 + 2^-23 * row max of the original value. */
+    QUANTISED_8(1, true);
+
+    final int width;
+    final boolean quantised;
+
+    Encoding(int width, boolean quantised) {
+      this.width = width;
+      this.quantised = quantised;
+    }
+
+    /** The largest code. */
+    int levels() {
+      return (1 << (8 * width)) - 1;
+    }
+  }
+
+  private Encoding encoding = Encoding.FLOAT64;
+  private boolean withTheta = true;
+  private boolean withDocuments = true;
+
+  /**
+   * Set the encoding of phi and theta.  The default, {@link Encoding#FLOAT64}, is lossless.
+   */
+  public ModelFile withEncoding(Encoding encoding) {
+    this.encoding = encoding;
+    return this;
+  }
+
+  /**
+   * Leave out theta.  The model can still be served, but not trained further.
+   */
+  public ModelFile withoutTheta() {
+    withTheta = false;
+    return this;
+  }
+
+  /**
+   * Leave out the training documents, keeping only the dictionary.  The model can still be
+   * served, but not trained further.
+   */
+  public ModelFile withoutDocuments() {
+    withDocuments = false;
+    return this;
+  }
+
+  /**
+   * Write the model, in one sequential pass, beside the destination and then move it over it,
+   * so a model mapped from the old file stays valid.
+   */
+  public void write(LDAModel model, Path file) {
+    final MatrixView phi = model.getPhiView();
+    final MatrixView theta = withTheta ? model.getThetaView() : null;
+    final Corpus corpus = model.getCorpus();
+    final int topicCount = model.getTopics();
+
+    final long alphaOffset = HEADER_BYTES;
+    final long phiOffset = alphaOffset + 8L * topicCount;
+    final long thetaOffset = theta == null ? -1 : phiOffset + matrixBytes(phi.rows(), phi.cols());
+    final long corpusOffset = theta == null ? phiOffset + matrixBytes(phi.rows(), phi.cols())
+        : thetaOffset + matrixBytes(theta.rows(), theta.cols());
+
+    final Path next = file.resolveSibling(file.getFileName() + ".next");
+    try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putLong(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(encoding.ordinal());
+      buffer.putInt(topicCount);
+      buffer.putInt(phi.rows());
+      buffer.putInt(theta == null ? corpus.docCount() : theta.cols());
+      buffer.putInt(model.getSamples());
+      buffer.putInt(model.getCycles());
+      buffer.putInt(theta == null ? 0 : 1);
+      buffer.putInt(withDocuments ? 1 : 0);
+      buffer.putInt(0);
+      buffer.putLong(alphaOffset);
+      buffer.putLong(phiOffset);
+      buffer.putLong(thetaOffset);
+      buffer.putLong(corpusOffset);
+
+      for (double a : model.getAlpha()) {
+        if (buffer.remaining() < 8) {
+          FileUtils.drain(channel, buffer);
+        }
+        buffer.putDouble(a);
+      }
+      writeMatrix(phi, channel, buffer);
+      if (theta != null) {
+        writeMatrix(theta, channel, buffer);
+      }
+      CorpusFile.write(withDocuments ? corpus : dictionaryOnly(corpus), channel, buffer);
+      FileUtils.drain(channel, buffer);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    FileUtils.moveAtomically(next, file);
+  }
+
+  /**
+   * Map a model written by {@link #write(LDAModel, Path)}.  Its theta is null if it was left
+   * out, and its corpus has no documents if they were.  The file must not be changed while the
+   * model is in use.
+   */
+  public static LDAModel read(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_BYTES) {
+        throw new IllegalStateException(file + " is not a model file");
+      }
+      final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      header.order(ByteOrder.LITTLE_ENDIAN);
+      if (header.getLong() != MAGIC) {
+        throw new IllegalStateException(file + " is not a model file");
+      }
+      final int version = header.getInt();
+      if (version != VERSION) {
+        throw new IllegalStateException("Unknown model file version " + version + " in " + file);
+      }
+      final int ordinal = header.getInt();
+      if (ordinal < 0 || ordinal >= Encoding.values().length) {
+        throw new IllegalStateException(file + " is not a model file");
+      }
+      final Encoding encoding = Encoding.values()[ordinal];
+      final int topicCount = header.getInt();
+      final int wordCount = header.getInt();
+      final int docCount = header.getInt();
+      final int samples = header.getInt();
+      final int cycles = header.getInt();
+      final boolean hasTheta = header.getInt() != 0;
+      header.getInt(); // hasDocuments, which the corpus itself records
+      header.getInt();
+      final long alphaOffset = header.getLong();
+      final long phiOffset = header.getLong();
+      final long thetaOffset = header.getLong();
+      final long corpusOffset = header.getLong();
+
+      final double[] alpha = new double[topicCount];
+      channel.map(FileChannel.MapMode.READ_ONLY, alphaOffset, 8L * topicCount)
+          .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(alpha);
+      final MatrixView phi = MappedMatrixView.map(channel, phiOffset, encoding, wordCount, topicCount);
+      final MatrixView theta = hasTheta
+          ? MappedMatrixView.map(channel, thetaOffset, encoding, topicCount, docCount) : null;
+      final Corpus corpus = CorpusFile.read(channel, corpusOffset, file);
+      return new LDAModel(corpus, phi, theta, alpha, topicCount, samples, cycles);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The bytes a matrix takes in the encoding, padded to a multiple of 8.
+   */
+  private long matrixBytes(int rows, int cols) {
+    final long bytes = (encoding.quantised ? 8L * rows : 0) + (long) rows * cols * encoding.width;
+    return (bytes + 7) & ~7L;
+  }
+
+  private void writeMatrix(MatrixView matrix, FileChannel channel, ByteBuffer buffer) {
+    final int rows = matrix.rows();
+    final int cols = matrix.cols();
+    float[] mins = null;
+    float[] scales = null;
+    if (encoding.quantised) {
+      mins = new float[rows];
+      scales = new float[rows];
+      for (int row = 0; row < rows; row++) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int col = 0; col < cols; col++) {
+          min = Math.min(min, matrix.get(row, col));
+          max = Math.max(max, matrix.get(row, col));
+        }
+        mins[row] = cols == 0 ? 0f : (float) min;
+        scales[row] = cols == 0 ? 0f : (float) ((max - mins[row]) / encoding.levels());
+      }
+      for (float min : mins) {
+        putFloat(channel, buffer, min);
+      }
+      for (float scale : scales) {
+        putFloat(channel, buffer, scale);
+      }
+    }
+
+    long bytes = 0;
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < cols; col++) {
+        if (buffer.remaining() < 8) {
+          FileUtils.drain(channel, buffer);
+        }
+        final double value = matrix.get(row, col);
+        switch (encoding) {
+          case FLOAT64:
+            buffer.putDouble(value);
+            break;
+          case FLOAT32:
+            buffer.putFloat((float) value);
+            break;
+          default:
+            final int code = scales[row] == 0f ? 0
+                : (int) Math.max(0, Math.min(encoding.levels(), Math.round((value - mins[row]) / scales[row])));
+            if (encoding == Encoding.QUANTISED_16) {
+              buffer.putChar((char) code);
+            } else {
+              buffer.put((byte) code);
+            }
+        }
+        bytes += encoding.width;
+      }
+    }
+    for (; (bytes & 7) != 0; bytes++) {
+      if (!buffer.hasRemaining()) {
+        FileUtils.drain(channel, buffer);
+      }
+      buffer.put((byte) 0);
+    }
+  }
+
+  private static void putFloat(FileChannel channel, ByteBuffer buffer, float value) {
+    if (buffer.remaining() < 4) {
+      FileUtils.drain(channel, buffer);
+    }
+    buffer.putFloat(value);
+  }
+
+  /**
+   * A corpus with the dictionary of the given one, but no documents.
+   */
+  private static Corpus dictionaryOnly(Corpus corpus) {
+    return new Corpus(new PackedIntArray(0, 0), new int[]{0}, corpus.dictionary());
+  }
+}
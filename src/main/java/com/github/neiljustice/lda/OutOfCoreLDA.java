@@ -0,0 +1,355 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.PackedIntArray;
+import com.github.neiljustice.lda.util.ThreadUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Collapsed Gibbs sampling of a {@link ChunkedCorpus} too large for its tokens to be held in
+ * memory.  Only the word-topic and topic counts are kept; each cycle streams the chunks through
+ * the heap, sampling each one and writing its topics back.  A single I/O thread reads the next
+ * chunk and writes back the last while the current one is sampled, so unless the disk is
+ * slower than the sampler, a cycle costs little more than the sampling.
+ * <p>
+ * Compared with {@link LDA}, alpha is fixed at its starting value and the model is the final
+ * state of the counts rather than an average of samples, and theta, which is per document, is
+ * not kept.  Training can be stopped and carried on later by opening the same directory
+ * again: the counts are rebuilt from the topics in the chunks.
+ */
+public class OutOfCoreLDA {
+  private static final Logger LOGGER = LogManager.getLogger(OutOfCoreLDA.class);
+
+  private final ChunkedCorpus corpus;
+  private final int topicCount;
+  private final int wordCount;
+  private final double[] alpha;
+  private final double beta = 0.2;
+  private final double betaSum;
+  private final CountMatrix wordsInTopic;
+  /** long, as a corpus streamed from disk may have more tokens than an int can count. */
+  private final long[] tokensInTopic;
+  /** 1 / (tokensInTopic[t] + betaSum) */
+  private final double[] inverseTopicTotals;
+  private final double[] probabilities;
+  private final double[] docCounts;
+  private final ExecutorService io = ThreadUtils.newDaemonPool(1, "lda-io");
+  private boolean prefetch = true;
+  private int cycles;
+  private CycleStats lastStats;
+
+  /**
+   * Start training on the corpus, carrying on from the topics it holds if they are for
+   * topicCount topics, and from random topics otherwise.
+   */
+  public OutOfCoreLDA(ChunkedCorpus corpus, int topicCount) {
+    if (topicCount <= 0) {
+      throw new IllegalArgumentException("There must be at least one topic");
+    }
+    if (corpus.maxWordRun() > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("A word occurs " + corpus.maxWordRun()
+          + " times, more than the topic-word counts can hold");
+    }
+    this.corpus = corpus;
+    this.topicCount = topicCount;
+    wordCount = corpus.wordCount();
+    alpha = new double[topicCount];
+    Arrays.fill(alpha, 0.1);
+    betaSum = beta * wordCount;
+    wordsInTopic = CountMatrix.create(wordCount, topicCount, corpus.maxWordRun());
+    tokensInTopic = new long[topicCount];
+    inverseTopicTotals = new double[topicCount];
+    probabilities = new double[topicCount];
+    docCounts = new double[topicCount];
+    LOGGER.info(" V : {} D : {} N : {} in {} chunks", wordCount, corpus.docCount(), corpus.size(),
+        corpus.chunkCount());
+    initialise();
+  }
+
+  /**
+   * Read, sample and write each chunk in turn on the calling thread, with no overlap of I/O
+   * and sampling.  For measuring what the overlap saves.
+   */
+  public OutOfCoreLDA withoutPrefetch() {
+    prefetch = false;
+    return this;
+  }
+
+  private void initialise() {
+    final boolean resume = corpus.topicCount() == topicCount;
+    if (!resume) {
+      corpus.setTopicCount(0);
+    }
+    for (int c = 0; c < corpus.chunkCount(); c++) {
+      final ChunkedCorpus.Chunk chunk = corpus.read(c);
+      if (!resume) {
+        chunk.topics = new int[chunk.words.length];
+        for (int i = 0; i < chunk.topics.length; i++) {
+          chunk.topics[i] = ThreadLocalRandom.current().nextInt(topicCount);
+        }
+        corpus.writeTopics(chunk, topicCount);
+      }
+      for (int i = 0; i < chunk.words.length; i++) {
+        wordsInTopic.increment(chunk.words[i], chunk.topics[i]);
+        tokensInTopic[chunk.topics[i]]++;
+      }
+    }
+    // recorded once every chunk holds topics, so an interrupted start is started again
+    corpus.setTopicCount(topicCount);
+  }
+
+  /**
+   * Run the given number of Gibbs cycles over the whole corpus.
+   */
+  public LDAModel train(int cycles) {
+    for (int cycle = 0; cycle < cycles; cycle++) {
+      lastStats = cycle();
+      this.cycles++;
+      LOGGER.info("Cycle {}: {}", this.cycles, lastStats);
+    }
+    return getModel();
+  }
+
+  /**
+   * The I/O and sampling times of the last cycle, or null before the first.
+   */
+  public CycleStats getLastCycleStats() {
+    return lastStats;
+  }
+
+  /**
+   * The model as of the last cycle, with phi copied so further training does not change it.
+   * Its corpus has the dictionary but no documents.
+   */
+  public LDAModel getModel() {
+    return new LDAModel(dictionaryOnly(), new PhiView().toArray(), null, alpha.clone(), topicCount, 1, cycles);
+  }
+
+  /**
+   * The model as of the last cycle, without copying phi: it is read from the counts as they
+   * stand, so further training shows through it.  Its corpus has the dictionary but no
+   * documents.
+   */
+  public LDAModel getLiveModel() {
+    return new LDAModel(dictionaryOnly(), new PhiView(), null, alpha.clone(), topicCount, 1, cycles);
+  }
+
+  private Corpus dictionaryOnly() {
+    return new Corpus(new PackedIntArray(0, 0), new int[]{0}, corpus.dictionary());
+  }
+
+  private CycleStats cycle() {
+    final CycleStats stats = new CycleStats();
+    final long start = System.nanoTime();
+    if (!prefetch) {
+      for (int c = 0; c < corpus.chunkCount(); c++) {
+        final long ioStart = System.nanoTime();
+        final ChunkedCorpus.Chunk chunk = read(c, stats);
+        stats.stallNanos += System.nanoTime() - ioStart;
+        sample(chunk, stats);
+        final long writeStart = System.nanoTime();
+        write(chunk, stats);
+        stats.stallNanos += System.nanoTime() - writeStart;
+      }
+    } else if (corpus.chunkCount() > 0) {
+      Future<ChunkedCorpus.Chunk> next = io.submit(readTask(0, stats));
+      Future<?> lastWrite = null;
+      for (int c = 0; c < corpus.chunkCount(); c++) {
+        final long waitStart = System.nanoTime();
+        final ChunkedCorpus.Chunk chunk = await(next);
+        stats.stallNanos += System.nanoTime() - waitStart;
+        if (c + 1 < corpus.chunkCount()) {
+          next = io.submit(readTask(c + 1, stats));
+        }
+        sample(chunk, stats);
+        // the last chunk's write was queued ahead of the read just awaited, so is usually
+        // done; waiting on it surfaces a failed write before training carries on
+        awaitWrite(lastWrite, stats);
+        lastWrite = io.submit(() -> write(chunk, stats));
+      }
+      awaitWrite(lastWrite, stats);
+    }
+    stats.totalNanos = System.nanoTime() - start;
+    return stats;
+  }
+
+  private Callable<ChunkedCorpus.Chunk> readTask(int index, CycleStats stats) {
+    return () -> read(index, stats);
+  }
+
+  /** Run on the I/O thread, so only it updates the I/O stats. */
+  private ChunkedCorpus.Chunk read(int index, CycleStats stats) {
+    final long start = System.nanoTime();
+    final ChunkedCorpus.Chunk chunk = corpus.read(index);
+    stats.ioNanos += System.nanoTime() - start;
+    stats.bytesRead += chunk.bytes;
+    return chunk;
+  }
+
+  private void write(ChunkedCorpus.Chunk chunk, CycleStats stats) {
+    final long start = System.nanoTime();
+    stats.bytesWritten += corpus.writeTopics(chunk, topicCount);
+    stats.ioNanos += System.nanoTime() - start;
+  }
+
+  private static void awaitWrite(Future<?> write, CycleStats stats) {
+    if (write != null) {
+      final long waitStart = System.nanoTime();
+      await(write);
+      stats.stallNanos += System.nanoTime() - waitStart;
+    }
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * The same sampling as {@link GibbsSampler}, over the documents of one chunk.
+   */
+  private void sample(ChunkedCorpus.Chunk chunk, CycleStats stats) {
+    final long start = System.nanoTime();
+    final int[] words = chunk.words;
+    final int[] topics = chunk.topics;
+    for (int topic = 0; topic < topicCount; topic++) {
+      updateInverseTopicTotal(topic);
+    }
+
+    for (int doc = 0; doc < chunk.docCount(); doc++) {
+      final int docStart = chunk.docOffsets[doc];
+      final int docEnd = chunk.docOffsets[doc + 1];
+      for (int i = docStart; i < docEnd; i++) {
+        docCounts[topics[i]]++;
+      }
+      for (int i = docStart; i < docEnd; i++) {
+        final int word = words[i];
+        final int oldTopic = topics[i];
+        tokensInTopic[oldTopic]--;
+        wordsInTopic.decrement(word, oldTopic);
+        docCounts[oldTopic]--;
+        updateInverseTopicTotal(oldTopic);
+
+        final int newTopic = sample(word);
+
+        tokensInTopic[newTopic]++;
+        wordsInTopic.increment(word, newTopic);
+        docCounts[newTopic]++;
+        updateInverseTopicTotal(newTopic);
+        topics[i] = newTopic;
+      }
+      // cheaper than clearing all K counts for documents shorter than K
+      if (docEnd - docStart < topicCount) {
+        for (int i = docStart; i < docEnd; i++) {
+          docCounts[topics[i]] = 0;
+        }
+      } else {
+        Arrays.fill(docCounts, 0);
+      }
+    }
+    stats.sampleNanos += System.nanoTime() - start;
+  }
+
+  private void updateInverseTopicTotal(int topic) {
+    inverseTopicTotals[topic] = 1d / (tokensInTopic[topic] + betaSum);
+  }
+
+  private int sample(int word) {
+    double sum = 0;
+
+    for (int topic = 0; topic < topicCount; topic++) {
+      probabilities[topic] = (docCounts[topic] + alpha[topic])
+          * (wordsInTopic.get(word, topic) + beta)
+          * inverseTopicTotals[topic];
+      sum += probabilities[topic];
+    }
+
+    return Probability.sampleFromMultinomialDist(probabilities, sum);
+  }
+
+  /**
+   * (wordsInTopic + beta) / (tokensInTopic + betaSum), read from the counts as they stand.
+   */
+  private final class PhiView implements MatrixView {
+    @Override
+    public int rows() {
+      return wordCount;
+    }
+
+    @Override
+    public int cols() {
+      return topicCount;
+    }
+
+    @Override
+    public double get(int row, int col) {
+      return (wordsInTopic.get(row, col) + beta) / (tokensInTopic[col] + betaSum);
+    }
+  }
+
+  /**
+   * Where the time of one cycle went.  The stall is the time the sampler spent waiting for
+   * chunks to be read or written; the I/O time is that spent reading and decoding chunks and
+   * encoding and writing their topics, whether or not the sampler was waiting.
+   */
+  public static final class CycleStats {
+    private long bytesRead;
+    private long bytesWritten;
+    private long ioNanos;
+    private long stallNanos;
+    private long sampleNanos;
+    private long totalNanos;
+
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    public double getIoSeconds() {
+      return ioNanos / 1e9;
+    }
+
+    public double getStallSeconds() {
+      return stallNanos / 1e9;
+    }
+
+    public double getSampleSeconds() {
+      return sampleNanos / 1e9;
+    }
+
+    public double getTotalSeconds() {
+      return totalNanos / 1e9;
+    }
+
+    /**
+     * Bytes read and written per second of I/O time, in MB/s.
+     */
+    public double getBandwidth() {
+      return ioNanos == 0 ? 0 : (bytesRead + bytesWritten) / 1e6 / getIoSeconds();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%.1f MB read, %.1f MB written in %.3fs I/O (%.1f MB/s); "
+              + "%.3fs sampling, %.3fs stalled, %.3fs total",
+          bytesRead / 1e6, bytesWritten / 1e6, getIoSeconds(), getBandwidth(),
+          getSampleSeconds(), getStallSeconds(), getTotalSeconds());
+    }
+  }
+}
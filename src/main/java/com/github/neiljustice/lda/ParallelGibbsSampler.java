@@ -0,0 +1,157 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Approximate distributed LDA (AD-LDA), as laid out in Newman, Asuncion, Smyth and Welling,
+ * 2009, "Distributed Algorithms for Topic Models".
+ * <p>
+ * The documents are split into one contiguous partition per thread, balanced by token count.
+ * At the start of each cycle every worker takes a private snapshot of wordsInTopic and
+ * tokensInTopic and Gibbs samples its own partition against it.  Once all workers are done
+ * their deltas from the snapshot are summed into the global counts.  topicsInDoc and
+ * tokensInDoc are only ever touched by the worker which owns the document, so they need no
+ * merging or locking.
+ * <p>
+ * Each worker's counts are only stale with respect to the other workers' moves in the same
+ * cycle, so the chain closely tracks the sequential sampler.
+ */
+class ParallelGibbsSampler implements Sampler {
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  private ExecutorService executor;
+  private List<Worker> workers;
+
+  ParallelGibbsSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+  }
+
+  @Override
+  public void cycle() {
+    if (workers == null || workers.size() != lda.parallelism) {
+      init(lda.parallelism);
+    }
+
+    ThreadUtils.invokeAll(executor, workers);
+    merge();
+  }
+
+  private void init(int threads) {
+    if (executor != null) {
+      executor.shutdown();
+    }
+    executor = ThreadUtils.newDaemonPool(threads, "lda-sampler");
+
+    final int[] bounds = corpus.partitionDocs(threads);
+    workers = new ArrayList<>(threads);
+    for (int p = 0; p < threads; p++) {
+      workers.add(new Worker(bounds[p], bounds[p + 1]));
+    }
+  }
+
+  /**
+   * Add each worker's delta from the snapshot to the global counts, in parallel over ranges
+   * of words.  The global counts have not changed since the snapshot was taken, so the delta
+   * is simply the difference between the two.
+   */
+  private void merge() {
+    final int threads = workers.size();
+    final List<Callable<Void>> tasks = new ArrayList<>(threads);
+    for (int p = 0; p < threads; p++) {
+      final int start = (int) ((long) lda.wordCount * p / threads);
+      final int end = (int) ((long) lda.wordCount * (p + 1) / threads);
+      tasks.add(() -> {
+        for (int word = start; word < end; word++) {
+          for (int topic = 0; topic < topicCount; topic++) {
+            final int global = lda.wordsInTopic.get(word, topic);
+            int sum = global;
+            for (Worker worker : workers) {
+              sum += worker.wordsInTopic.get(word, topic) - global;
+            }
+            lda.wordsInTopic.set(word, topic, sum);
+          }
+        }
+        return null;
+      });
+    }
+    ThreadUtils.invokeAll(executor, tasks);
+
+    for (int topic = 0; topic < topicCount; topic++) {
+      int sum = lda.tokensInTopic[topic];
+      for (Worker worker : workers) {
+        sum += worker.tokensInTopic[topic] - lda.tokensInTopic[topic];
+      }
+      lda.tokensInTopic[topic] = sum;
+    }
+  }
+
+  private final class Worker implements Callable<Void> {
+    private final int startDoc;
+    private final int startToken;
+    private final int endToken;
+    private final CountMatrix wordsInTopic;
+    private final int[] tokensInTopic;
+    private final double[] probabilities;
+    private final DocTopicRow docRow;
+
+    Worker(int startDoc, int endDoc) {
+      this.startDoc = startDoc;
+      startToken = corpus.docStart(startDoc);
+      endToken = corpus.docStart(endDoc);
+      wordsInTopic = lda.wordsInTopic.emptyCopy();
+      tokensInTopic = new int[topicCount];
+      probabilities = new double[topicCount];
+      docRow = new DocTopicRow(lda.topicsInDoc, topicCount);
+    }
+
+    @Override
+    public Void call() {
+      wordsInTopic.copyRows(lda.wordsInTopic, 0, lda.wordCount);
+      System.arraycopy(lda.tokensInTopic, 0, tokensInTopic, 0, topicCount);
+
+      int doc = startDoc;
+      for (int i = startToken; i < endToken; i++) {
+        while (corpus.docEnd(doc) <= i) {
+          doc++;
+        }
+        docRow.load(doc);
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        tokensInTopic[oldTopic]--;
+        wordsInTopic.decrement(word, oldTopic);
+        docRow.decrement(oldTopic);
+
+        final int newTopic = sample(word);
+
+        tokensInTopic[newTopic]++;
+        wordsInTopic.increment(word, newTopic);
+        docRow.increment(newTopic);
+        corpus.setTopic(i, newTopic);
+      }
+      docRow.clear();
+      return null;
+    }
+
+    private int sample(int word) {
+      double sum = 0;
+
+      for (int topic = 0; topic < topicCount; topic++) {
+        probabilities[topic] = (docRow.counts[topic] + lda.alpha[topic])
+            * ((wordsInTopic.get(word, topic) + lda.beta)
+            / (tokensInTopic[topic] + lda.betaSum));
+        sum += probabilities[topic];
+      }
+
+      return Probability.sampleFromMultinomialDist(probabilities, sum);
+    }
+  }
+}
@@ -40,6 +40,39 @@ public class Probability {
     return result;
   }
 
+  public static int sampleFromMultinomialDist(MatrixView dist, int col, double sum) {
+    int result = -1;
+    double sample = ThreadLocalRandom.current().nextDouble() * sum;
+
+    while (sample > 0.0) {
+      result++;
+      sample -= dist.get(result, col);
+    }
+
+    if (result == -1) {
+      throw new IllegalStateException("Sampling failure. Sample: " + sample + " sum: " + sum);
+    }
+
+    return result;
+  }
+
+  /**
+   * The digamma function, the derivative of ln(gamma(x)), for x &gt; 0.  Shifts x up to 6 or
+   * more with psi(x) = psi(x + 1) - 1 / x, then uses the asymptotic series.
+   */
+  public static double digamma(double x) {
+    double result = 0;
+    while (x < 6) {
+      result -= 1 / x;
+      x++;
+    }
+    final double inverse = 1 / x;
+    final double inverse2 = inverse * inverse;
+    return result + Math.log(x) - 0.5 * inverse
+        - inverse2 * (1d / 12 - inverse2 * (1d / 120 - inverse2 * (1d / 252
+        - inverse2 * (1d / 240 - inverse2 / 132))));
+  }
+
   public static int sampleFromPoissonDist(int[] series) {
     return sampleFromPoissonDist(Arrays.stream(series).average().orElse(0d));
   }
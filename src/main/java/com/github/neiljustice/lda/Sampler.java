@@ -0,0 +1,10 @@
+package com.github.neiljustice.lda;
+
+/**
+ * A sampling engine.  Each cycle reassigns the topic of every token in the corpus,
+ * keeping the count matrices held by {@link LDA} in step with the corpus.
+ */
+interface Sampler {
+
+  void cycle();
+}
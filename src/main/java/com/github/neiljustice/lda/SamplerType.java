@@ -0,0 +1,96 @@
+package com.github.neiljustice.lda;
+
+/**
+ * The sampling engines available for training an {@link LDA} model.
+ */
+public enum SamplerType {
+  /**
+   * Standard collapsed Gibbs sampler.  Computes the weight of every topic for every token.
+   */
+  GIBBS {
+    @Override
+    Sampler create(LDA lda) {
+      return new GibbsSampler(lda);
+    }
+  },
+  /**
+   * SparseLDA, from Yao, Mimno and McCallum, 2009.  Splits the sampling distribution into
+   * smoothing, document-topic and topic-word buckets, and only visits the non-zero topics
+   * of the latter two.
+   */
+  SPARSE {
+    @Override
+    Sampler create(LDA lda) {
+      return new SparseGibbsSampler(lda);
+    }
+  },
+  /**
+   * AliasLDA, from Li, Ahmed, Ravi and Smola, 2014.  Draws Metropolis-Hastings proposals
+   * from stale per-word alias tables, so each token costs O(1) amortised in the number of
+   * topics, plus the number of topics in its document.
+   */
+  ALIAS {
+    @Override
+    Sampler create(LDA lda) {
+      return new AliasSampler(lda);
+    }
+  },
+  /**
+   * LightLDA, from Yuan et al., 2015.  Alternates Metropolis-Hastings proposals from stale
+   * per-word alias tables with proposals drawn from the token's own document, so each token
+   * costs O(1) amortised in the number of topics.
+   */
+  LIGHT {
+    @Override
+    Sampler create(LDA lda) {
+      return new LightSampler(lda);
+    }
+  },
+  /**
+   * WarpLDA, from Chen et al., 2016.  Alternates a word-major and a doc-major pass over the
+   * corpus, so that each pass only touches one row of counts at a time and stays in cache.
+   */
+  WARP {
+    @Override
+    Sampler create(LDA lda) {
+      return new WarpSampler(lda);
+    }
+  },
+  /**
+   * Approximate distributed LDA (AD-LDA), from Newman et al., 2009.  Gibbs samples partitions
+   * of the documents in parallel against per-thread snapshots of the topic-word counts, and
+   * merges the changes at the end of each cycle.  The number of threads is set with
+   * {@link LDA#withParallelism(int)}.
+   */
+  PARALLEL {
+    @Override
+    Sampler create(LDA lda) {
+      return new ParallelGibbsSampler(lda);
+    }
+  },
+  /**
+   * Exact parallel Gibbs sampling over a diagonal schedule of (doc block, word block) cells,
+   * from Yan, Xu and Qi, 2009.  Workers never share a row of the topic-word or doc-topic
+   * counts, so no merging is needed.  The number of threads is set with
+   * {@link LDA#withParallelism(int)}.
+   */
+  BLOCK_PARALLEL {
+    @Override
+    Sampler create(LDA lda) {
+      return new BlockParallelSampler(lda);
+    }
+  },
+  /**
+   * Lock-free parallel Gibbs sampling, in the style of Hogwild!.  All threads sample against
+   * shared counts which are updated atomically and may be read stale.  The number of threads
+   * is set with {@link LDA#withParallelism(int)}.
+   */
+  HOGWILD {
+    @Override
+    Sampler create(LDA lda) {
+      return new HogwildSampler(lda);
+    }
+  };
+
+  abstract Sampler create(LDA lda);
+}
@@ -0,0 +1,240 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.AliasTable;
+import com.github.neiljustice.lda.util.Vocabulary;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A trained model frozen for answering inference requests from many threads at once.  It
+ * holds phi word-major as floats, an alias table over each word's row of phi, and the
+ * model's dictionary, none of which change after construction, so it needs no locks.
+ * <p>
+ * Documents are folded in as by {@link Inferencer}, but each token is drawn by a short
+ * Metropolis-Hastings chain in the style of {@link SamplerType#LIGHT}: one proposal from the
+ * word's alias table and one from the document's own topics.  phi is fixed, so the alias
+ * tables are exact and built once, and each draw costs O(1) however many topics there are.
+ * Each thread keeps its own workspace, so a request allocates nothing but its result.
+ */
+public final class ServingModel {
+  private final Vocabulary dictionary;
+  private final int topicCount;
+  private final int wordCount;
+  private final int iterations;
+  private final int burnIn;
+  /** phi[word * topicCount + topic] */
+  private final float[] phi;
+  /** The alias tables over each word's row of phi, laid out as phi is. */
+  private final int[] alias;
+  private final float[] aliasProbability;
+  private final double[] alpha;
+  private final double alphaSum;
+  private final AliasTable alphaTable;
+  private final ThreadLocal<Workspace> workspace;
+
+  public ServingModel(LDAModel model) {
+    this(model, Inferencer.DEFAULT_ITERATIONS);
+  }
+
+  /**
+   * @param iterations the Metropolis-Hastings cycles run over each document.  theta is
+   *                   averaged over the second half of them.
+   */
+  public ServingModel(LDAModel model, int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("There must be at least one iteration");
+    }
+    final MatrixView view = model.getPhiView();
+    dictionary = model.getCorpus().dictionary();
+    topicCount = model.getTopics();
+    wordCount = view.rows();
+    this.iterations = iterations;
+    burnIn = iterations / 2;
+
+    final int size = Math.multiplyExact(wordCount, topicCount);
+    phi = new float[size];
+    alias = new int[size];
+    aliasProbability = new float[size];
+    final AliasTable table = new AliasTable(topicCount);
+    final double[] weights = new double[topicCount];
+    final int[] work = new int[topicCount];
+    for (int word = 0; word < wordCount; word++) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        weights[topic] = view.get(word, topic);
+        phi[word * topicCount + topic] = (float) weights[topic];
+      }
+      table.build(weights, topicCount, work);
+      table.copyTo(alias, aliasProbability, word * topicCount);
+    }
+
+    alpha = model.getAlpha().clone();
+    alphaSum = Arrays.stream(alpha).sum();
+    alphaTable = new AliasTable(topicCount);
+    alphaTable.build(alpha, topicCount, work);
+    workspace = ThreadLocal.withInitial(() -> new Workspace(topicCount));
+  }
+
+  public Vocabulary dictionary() {
+    return dictionary;
+  }
+
+  /**
+   * The id of the word in the model's dictionary, or -1 if the model does not know it.
+   */
+  public int getIndex(CharSequence word) {
+    return dictionary.getIndex(word);
+  }
+
+  public int getTopicCount() {
+    return topicCount;
+  }
+
+  public int getWordCount() {
+    return wordCount;
+  }
+
+  /**
+   * The probability of the word under the topic.
+   */
+  public float phi(int word, int topic) {
+    return phi[word * topicCount + topic];
+  }
+
+  /**
+   * theta for a document given as word ids of the model's dictionary.  Ids outside it, such
+   * as the -1 of a failed lookup, are skipped.
+   *
+   * @return the probability of each topic in the document.
+   */
+  public double[] infer(int[] words) {
+    final Workspace ws = workspace.get();
+    ws.length = 0;
+    for (int word : words) {
+      if (word >= 0 && word < wordCount) {
+        ws.add(word);
+      }
+    }
+    return sample(ws);
+  }
+
+  /**
+   * theta for a tokenised document.  Tokens the model does not know are skipped.
+   */
+  public double[] infer(List<? extends CharSequence> tokens) {
+    final Workspace ws = workspace.get();
+    ws.length = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      final int word = dictionary.getIndex(tokens.get(i));
+      if (word >= 0 && word < wordCount) {
+        ws.add(word);
+      }
+    }
+    return sample(ws);
+  }
+
+  private double[] sample(Workspace ws) {
+    final double[] theta = new double[topicCount];
+    final int length = ws.length;
+    if (length == 0) {
+      for (int topic = 0; topic < topicCount; topic++) {
+        theta[topic] = alpha[topic] / alphaSum;
+      }
+      return theta;
+    }
+
+    final int[] words = ws.words;
+    final int[] topics = ws.topics;
+    final int[] counts = ws.counts;
+    Arrays.fill(counts, 0);
+    for (int i = 0; i < length; i++) {
+      topics[i] = drawFromWord(words[i]);
+      counts[topics[i]]++;
+    }
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      for (int i = 0; i < length; i++) {
+        final int oldTopic = topics[i];
+        counts[oldTopic]--;
+        topics[i] = draw(words[i], oldTopic, topics, length, counts);
+        counts[topics[i]]++;
+      }
+      if (iteration >= burnIn) {
+        for (int topic = 0; topic < topicCount; topic++) {
+          theta[topic] += counts[topic] + alpha[topic];
+        }
+      }
+    }
+
+    final double total = (iterations - burnIn) * (length + alphaSum);
+    for (int topic = 0; topic < topicCount; topic++) {
+      theta[topic] /= total;
+    }
+    return theta;
+  }
+
+  /**
+   * One word-proposal and one doc-proposal.  The target is (counts + alpha) * phi, so the
+   * word-proposal, drawn in proportion to phi, is accepted on the ratio of (counts + alpha)
+   * alone.  The doc-proposal is tested against the full target, as in {@link LightSampler}:
+   * the counts exclude the token being drawn, but its slot still holds oldTopic, which the
+   * doc-proposal can pick, so the proposal is not the target's (counts + alpha).
+   */
+  private int draw(int word, int oldTopic, int[] topics, int length, int[] counts) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    int current = oldTopic;
+
+    int proposal = drawFromWord(word);
+    double ratio = (counts[proposal] + alpha[proposal]) / (counts[current] + alpha[current]);
+    if (ratio >= 1d || random.nextDouble() < ratio) {
+      current = proposal;
+    }
+
+    if (random.nextDouble() * (length + alphaSum) < length) {
+      proposal = topics[random.nextInt(length)];
+    } else {
+      proposal = alphaTable.sample();
+    }
+    final int offset = word * topicCount;
+    ratio = ((counts[proposal] + alpha[proposal]) * phi[offset + proposal]
+        * docProposal(counts, oldTopic, current))
+        / ((counts[current] + alpha[current]) * phi[offset + current]
+        * docProposal(counts, oldTopic, proposal));
+    if (ratio >= 1d || random.nextDouble() < ratio) {
+      current = proposal;
+    }
+    return current;
+  }
+
+  private double docProposal(int[] counts, int oldTopic, int topic) {
+    return counts[topic] + (topic == oldTopic ? 1 : 0) + alpha[topic];
+  }
+
+  private int drawFromWord(int word) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int i = word * topicCount + random.nextInt(topicCount);
+    return random.nextFloat() < aliasProbability[i] ? i - word * topicCount : alias[i];
+  }
+
+  /**
+   * The arrays one thread samples a document with, kept between documents.
+   */
+  private static final class Workspace {
+    private int[] words = new int[64];
+    private int[] topics = new int[64];
+    private final int[] counts;
+    private int length;
+
+    Workspace(int topicCount) {
+      counts = new int[topicCount];
+    }
+
+    void add(int word) {
+      if (length == words.length) {
+        words = Arrays.copyOf(words, 2 * length);
+        topics = new int[2 * length];
+      }
+      words[length++] = word;
+    }
+  }
+}
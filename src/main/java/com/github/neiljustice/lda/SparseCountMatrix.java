@@ -0,0 +1,228 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.ArrayUtils;
+
+import java.util.Arrays;
+
+/**
+ * Counts stored as a list of non-zero (column, count) entries per row, for rows which can
+ * only ever have a few non-zero columns, such as the topics of a short document.  Each row
+ * has room for min(run, cols) entries, where run is the number of items the row holds, so
+ * memory scales with the data rather than with rows * cols.
+ * <p>
+ * Following Mimno, Yao and McCallum, 2009, "Efficient Methods for Topic Model Inference on
+ * Streaming Document Collections", each entry packs the count above the column in a single
+ * int, and each row is kept sorted by descending count.  Incrementing or decrementing a count
+ * is then a short bubble of the entry towards the front or back of its row; a count which
+ * drops to zero sorts to the very end, where it is dropped.  Looking up a single count is a
+ * linear scan of the row, so callers should iterate over
+ * {@link #entryCount(int) the entries}, or use a {@link DocTopicRow}, where they can.
+ */
+class SparseCountMatrix extends CountMatrix {
+  private final int colBits;
+  private final int colMask;
+  /**
+   * Row r's entries are entries[starts[r]] to entries[starts[r] + sizes[r]], with room up to
+   * starts[r + 1].  The arrays may be longer than the rows need.
+   */
+  private int[] starts;
+  private int[] sizes;
+  private int[] entries;
+
+  /**
+   * @param offsets CSR offsets: row r holds the items offsets[r] to offsets[r + 1].
+   */
+  SparseCountMatrix(int[] offsets, int cols) {
+    super(offsets.length - 1, cols);
+    colBits = bitsFor(cols);
+    colMask = (1 << colBits) - 1;
+    starts = new int[rows + 1];
+    for (int row = 0; row < rows; row++) {
+      starts[row + 1] = starts[row] + Math.min(offsets[row + 1] - offsets[row], cols);
+    }
+    sizes = new int[rows];
+    entries = new int[starts[rows]];
+  }
+
+  private SparseCountMatrix(SparseCountMatrix other) {
+    super(other.rows, other.cols);
+    colBits = other.colBits;
+    colMask = other.colMask;
+    starts = other.starts;
+    sizes = new int[rows];
+    entries = new int[other.entries.length];
+  }
+
+  /**
+   * Whether a count as large as maxCount can be packed alongside a column index.
+   */
+  static boolean fits(int cols, long maxCount) {
+    return maxCount <= Integer.MAX_VALUE >>> bitsFor(cols);
+  }
+
+  private static int bitsFor(int cols) {
+    return cols <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(cols - 1);
+  }
+
+  @Override
+  int get(int row, int col) {
+    final int pos = indexOf(row, col);
+    return pos < 0 ? 0 : entries[pos] >>> colBits;
+  }
+
+  @Override
+  void set(int row, int col, int value) {
+    if (value < 0 || !fits(cols, value)) {
+      throw new IllegalArgumentException("Count " + value + " cannot be stored");
+    }
+    int pos = indexOf(row, col);
+    if (pos < 0) {
+      if (value == 0) {
+        return;
+      }
+      pos = append(row, col);
+    }
+    final int old = entries[pos] >>> colBits;
+    entries[pos] = (value << colBits) | col;
+    if (value > old) {
+      moveUp(row, pos);
+    } else {
+      moveDown(row, pos);
+    }
+  }
+
+  @Override
+  int increment(int row, int col) {
+    int pos = indexOf(row, col);
+    if (pos < 0) {
+      pos = append(row, col);
+    }
+    entries[pos] += 1 << colBits;
+    return entries[moveUp(row, pos)] >>> colBits;
+  }
+
+  @Override
+  int decrement(int row, int col) {
+    final int pos = indexOf(row, col);
+    if (pos < 0) {
+      throw new IllegalStateException("Count at (" + row + ", " + col + ") is already zero");
+    }
+    entries[pos] -= 1 << colBits;
+    final int count = entries[pos] >>> colBits;
+    moveDown(row, pos);
+    return count;
+  }
+
+  @Override
+  void add(int row, int col, int delta) {
+    for (; delta > 0; delta--) {
+      increment(row, col);
+    }
+    for (; delta < 0; delta++) {
+      decrement(row, col);
+    }
+  }
+
+  @Override
+  void clear() {
+    Arrays.fill(sizes, 0);
+  }
+
+  @Override
+  int entryCount(int row) {
+    return sizes[row];
+  }
+
+  @Override
+  int entryCol(int row, int entry) {
+    return entries[starts[row] + entry] & colMask;
+  }
+
+  @Override
+  int entryValue(int row, int entry) {
+    return entries[starts[row] + entry] >>> colBits;
+  }
+
+  @Override
+  CountMatrix grow(int[] runs, long maxCount) {
+    if (!fits(cols, maxCount)) {
+      return widen(runs.length);
+    }
+    final int newRows = rows + runs.length;
+    starts = ArrayUtils.grow(starts, newRows + 1);
+    for (int row = rows; row < newRows; row++) {
+      starts[row + 1] = Math.addExact(starts[row], Math.min(runs[row - rows], cols));
+    }
+    sizes = ArrayUtils.grow(sizes, newRows);
+    entries = ArrayUtils.grow(entries, starts[newRows]);
+    rows = newRows;
+    return this;
+  }
+
+  @Override
+  CountMatrix emptyCopy() {
+    return new SparseCountMatrix(this);
+  }
+
+  @Override
+  void copyRows(CountMatrix other, int startRow, int endRow) {
+    final SparseCountMatrix source = (SparseCountMatrix) other;
+    System.arraycopy(source.entries, starts[startRow], entries, starts[startRow],
+        starts[endRow] - starts[startRow]);
+    System.arraycopy(source.sizes, startRow, sizes, startRow, endRow - startRow);
+  }
+
+  private int indexOf(int row, int col) {
+    final int end = starts[row] + sizes[row];
+    for (int pos = starts[row]; pos < end; pos++) {
+      if ((entries[pos] & colMask) == col) {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Add a zero count for the column at the end of the row, which is where zero sorts to.
+   */
+  private int append(int row, int col) {
+    if (starts[row] + sizes[row] == starts[row + 1]) {
+      throw new IllegalStateException("Row " + row + " has no room for another non-zero count");
+    }
+    final int pos = starts[row] + sizes[row]++;
+    entries[pos] = col;
+    return pos;
+  }
+
+  /**
+   * Restore the order after the entry at pos has grown.
+   *
+   * @return the entry's new position.
+   */
+  private int moveUp(int row, int pos) {
+    final int entry = entries[pos];
+    final int start = starts[row];
+    while (pos > start && entries[pos - 1] < entry) {
+      entries[pos] = entries[pos - 1];
+      pos--;
+    }
+    entries[pos] = entry;
+    return pos;
+  }
+
+  /**
+   * Restore the order after the entry at pos has shrunk, dropping it if it is now zero.
+   */
+  private void moveDown(int row, int pos) {
+    final int entry = entries[pos];
+    final int last = starts[row] + sizes[row] - 1;
+    while (pos < last && entries[pos + 1] > entry) {
+      entries[pos] = entries[pos + 1];
+      pos++;
+    }
+    entries[pos] = entry;
+    if (entry >>> colBits == 0) {
+      sizes[row]--;
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.github.neiljustice.lda;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SparseLDA sampler, as laid out in Yao, Mimno and McCallum, 2009, "Efficient Methods
+ * for Topic Model Inference on Streaming Document Collections".
+ * <p>
+ * The weight of topic t for word w in doc d is split into three buckets:
+ * <pre>
+ *   (alpha_t + n_td)(beta + n_wt) / (betaSum + n_t)
+ *     = alpha_t * beta / (betaSum + n_t)            smoothing only
+ *     + n_td * beta / (betaSum + n_t)               document-topic
+ *     + (alpha_t + n_td) * n_wt / (betaSum + n_t)   topic-word
+ * </pre>
+ * The masses of the first two buckets are updated incrementally as tokens move between
+ * topics, and the coefficient of the third is cached per document, so each token only
+ * visits the topics its word and its document currently occur in.  The topics of each
+ * word are kept in descending order of count, so the walk through the topic-word bucket
+ * usually ends after a few steps.
+ */
+class SparseGibbsSampler implements Sampler {
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  /** wordTopics[word][0 .. wordTopicCount[word]) are the topics the word occurs in, by descending count. */
+  private final int[][] wordTopics;
+  private final int[] wordTopicCount;
+  /** The topics which occur in the current document. */
+  private final TopicSet docTopics;
+  /** (alpha_t + n_td) / (betaSum + n_t) for the current document. */
+  private final double[] coefficient;
+  private final double[] topicWordWeights;
+  private double smoothingMass;
+  private double docMass;
+
+  SparseGibbsSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+
+    wordTopics = new int[lda.wordCount][];
+    wordTopicCount = new int[lda.wordCount];
+    docTopics = new TopicSet(topicCount);
+    coefficient = new double[topicCount];
+    topicWordWeights = new double[topicCount];
+
+    for (int word = 0; word < lda.wordCount; word++) {
+      initWordTopics(word);
+    }
+  }
+
+  /**
+   * Build the list of topics the word occurs in, sorted by descending count.  Its capacity is
+   * the most topics the word could ever occur in, so the list never needs to grow.
+   */
+  private void initWordTopics(int word) {
+    final CountMatrix counts = lda.wordsInTopic;
+    int frequency = 0;
+    int nonZero = 0;
+    for (int topic = 0; topic < topicCount; topic++) {
+      frequency += counts.get(word, topic);
+      if (counts.get(word, topic) > 0) {
+        nonZero++;
+      }
+    }
+
+    // pack (count, topic) so a single sort orders topics by count
+    final long[] packed = new long[nonZero];
+    int j = 0;
+    for (int topic = 0; topic < topicCount; topic++) {
+      if (counts.get(word, topic) > 0) {
+        packed[j++] = ((long) counts.get(word, topic) << 32) | topic;
+      }
+    }
+    Arrays.sort(packed);
+
+    final int[] topics = new int[Math.min(topicCount, frequency)];
+    for (int k = 0; k < nonZero; k++) {
+      topics[k] = (int) packed[nonZero - 1 - k];
+    }
+    wordTopics[word] = topics;
+    wordTopicCount[word] = nonZero;
+  }
+
+  @Override
+  public void cycle() {
+    smoothingMass = 0d;
+    for (int topic = 0; topic < topicCount; topic++) {
+      final double denom = lda.tokensInTopic[topic] + lda.betaSum;
+      smoothingMass += lda.alpha[topic] * lda.beta / denom;
+      coefficient[topic] = lda.alpha[topic] / denom;
+    }
+
+    for (int doc = 0; doc < lda.docCount; doc++) {
+      final int start = corpus.docStart(doc);
+      final int end = corpus.docEnd(doc);
+
+      beginDoc(doc, start, end);
+      for (int i = start; i < end; i++) {
+        final int word = corpus.word(i);
+        final int oldTopic = corpus.topic(i);
+        update(word, doc, oldTopic, -1);
+
+        final int newTopic = sample(word, doc);
+
+        update(word, doc, newTopic, 1);
+        corpus.setTopic(i, newTopic);
+      }
+      endDoc();
+    }
+  }
+
+  private void beginDoc(int doc, int start, int end) {
+    for (int i = start; i < end; i++) {
+      docTopics.add(corpus.topic(i));
+    }
+
+    docMass = 0d;
+    for (int j = 0; j < docTopics.size(); j++) {
+      final int topic = docTopics.get(j);
+      final int count = lda.topicsInDoc.get(doc, topic);
+      final double denom = lda.tokensInTopic[topic] + lda.betaSum;
+      docMass += lda.beta * count / denom;
+      coefficient[topic] = (lda.alpha[topic] + count) / denom;
+    }
+  }
+
+  private void endDoc() {
+    for (int j = 0; j < docTopics.size(); j++) {
+      final int topic = docTopics.get(j);
+      coefficient[topic] = lda.alpha[topic] / (lda.tokensInTopic[topic] + lda.betaSum);
+    }
+    docTopics.clear();
+  }
+
+  /**
+   * Add (delta = 1) or remove (delta = -1) a token of the given word from a topic, keeping
+   * the bucket masses, the cached coefficient and the sparse topic lists up to date.
+   */
+  private void update(int word, int doc, int topic, int delta) {
+    final double alpha = lda.alpha[topic];
+    final double beta = lda.beta;
+    double denom = lda.tokensInTopic[topic] + lda.betaSum;
+    int docCount = lda.topicsInDoc.get(doc, topic);
+    smoothingMass -= alpha * beta / denom;
+    docMass -= beta * docCount / denom;
+
+    lda.tokensInTopic[topic] += delta;
+    lda.wordsInTopic.add(word, topic, delta);
+    lda.topicsInDoc.add(doc, topic, delta);
+
+    denom = lda.tokensInTopic[topic] + lda.betaSum;
+    docCount += delta;
+    smoothingMass += alpha * beta / denom;
+    docMass += beta * docCount / denom;
+    coefficient[topic] = (alpha + docCount) / denom;
+
+    if (delta < 0) {
+      decrementWordTopic(word, topic);
+      if (docCount == 0) {
+        docTopics.remove(topic);
+      }
+    } else {
+      incrementWordTopic(word, topic);
+      docTopics.add(topic);
+    }
+  }
+
+  private void incrementWordTopic(int word, int topic) {
+    final int[] topics = wordTopics[word];
+    final CountMatrix counts = lda.wordsInTopic;
+    int pos = indexOf(topics, wordTopicCount[word], topic);
+    if (pos < 0) {
+      pos = wordTopicCount[word]++;
+      topics[pos] = topic;
+    }
+    while (pos > 0 && counts.get(word, topics[pos - 1]) < counts.get(word, topic)) {
+      topics[pos] = topics[pos - 1];
+      topics[pos - 1] = topic;
+      pos--;
+    }
+  }
+
+  private void decrementWordTopic(int word, int topic) {
+    final int[] topics = wordTopics[word];
+    final CountMatrix counts = lda.wordsInTopic;
+    final int length = wordTopicCount[word];
+    int pos = indexOf(topics, length, topic);
+    while (pos < length - 1 && counts.get(word, topics[pos + 1]) > counts.get(word, topic)) {
+      topics[pos] = topics[pos + 1];
+      topics[pos + 1] = topic;
+      pos++;
+    }
+    // a zero count is always sorted to the end of the list
+    if (counts.get(word, topic) == 0) {
+      wordTopicCount[word]--;
+    }
+  }
+
+  private static int indexOf(int[] array, int length, int value) {
+    for (int i = 0; i < length; i++) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int sample(int word, int doc) {
+    final int[] topics = wordTopics[word];
+    final CountMatrix counts = lda.wordsInTopic;
+    final int length = wordTopicCount[word];
+
+    double topicWordMass = 0d;
+    for (int j = 0; j < length; j++) {
+      final int topic = topics[j];
+      topicWordWeights[j] = coefficient[topic] * counts.get(word, topic);
+      topicWordMass += topicWordWeights[j];
+    }
+
+    double sample = ThreadLocalRandom.current().nextDouble() * (smoothingMass + docMass + topicWordMass);
+
+    if (sample < topicWordMass) {
+      for (int j = 0; j < length - 1; j++) {
+        sample -= topicWordWeights[j];
+        if (sample <= 0d) {
+          return topics[j];
+        }
+      }
+      return topics[length - 1];
+    }
+    sample -= topicWordMass;
+
+    final int docTopicCount = docTopics.size();
+    if (sample < docMass && docTopicCount > 0) {
+      for (int j = 0; j < docTopicCount - 1; j++) {
+        final int topic = docTopics.get(j);
+        sample -= lda.beta * lda.topicsInDoc.get(doc, topic) / (lda.tokensInTopic[topic] + lda.betaSum);
+        if (sample <= 0d) {
+          return topic;
+        }
+      }
+      return docTopics.get(docTopicCount - 1);
+    }
+    sample -= docMass;
+
+    for (int topic = 0; topic < topicCount - 1; topic++) {
+      sample -= lda.alpha[topic] * lda.beta / (lda.tokensInTopic[topic] + lda.betaSum);
+      if (sample <= 0d) {
+        return topic;
+      }
+    }
+    return topicCount - 1;
+  }
+}
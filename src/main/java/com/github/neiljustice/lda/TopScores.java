@@ -0,0 +1,96 @@
+package com.github.neiljustice.lda;
+
+/**
+ * The N best of a stream of (index, score) pairs, kept in a bounded min-heap of primitives
+ * whose root is the worst pair kept: the lowest score, and of equal scores, the highest
+ * index.  So where pairs tie on score for the last place, the lower index wins, whatever
+ * order they are offered in.
+ */
+final class TopScores {
+  private final int[] indices;
+  private final double[] scores;
+  private int size;
+
+  TopScores(int capacity) {
+    indices = new int[capacity];
+    scores = new double[capacity];
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isFull() {
+    return size == indices.length;
+  }
+
+  /**
+   * The score a new pair must beat once the heap is full.
+   */
+  double worst() {
+    return scores[0];
+  }
+
+  /**
+   * The i-th pair kept, in no particular order.
+   */
+  int index(int i) {
+    return indices[i];
+  }
+
+  double score(int i) {
+    return scores[i];
+  }
+
+  /**
+   * Keep the pair if the heap has room or it beats the worst pair kept.
+   */
+  void offer(int index, double score) {
+    if (size < indices.length) {
+      int i = size++;
+      while (i > 0) {
+        final int parent = (i - 1) >>> 1;
+        if (!worse(index, score, indices[parent], scores[parent])) {
+          break;
+        }
+        indices[i] = indices[parent];
+        scores[i] = scores[parent];
+        i = parent;
+      }
+      indices[i] = index;
+      scores[i] = score;
+    } else if (size > 0 && worse(indices[0], scores[0], index, score)) {
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && worse(indices[child + 1], scores[child + 1], indices[child], scores[child])) {
+          child++;
+        }
+        if (!worse(indices[child], scores[child], index, score)) {
+          break;
+        }
+        indices[i] = indices[child];
+        scores[i] = scores[child];
+        i = child;
+      }
+      indices[i] = index;
+      scores[i] = score;
+    }
+  }
+
+  /**
+   * Offer every pair the other heap kept.
+   */
+  void offerAll(TopScores other) {
+    for (int i = 0; i < other.size; i++) {
+      offer(other.indices[i], other.scores[i]);
+    }
+  }
+
+  private static boolean worse(int index, double score, int otherIndex, double otherScore) {
+    return score < otherScore || (score == otherScore && index > otherIndex);
+  }
+}
@@ -0,0 +1,132 @@
+package com.github.neiljustice.lda;
+
+/**
+ * The topic assignment of every token, in the narrowest of byte, char or int which holds
+ * every topic.  Java never lets a write to one element disturb its neighbours, so threads
+ * can set different tokens at the same time without locking, which packing topics into
+ * shared longs would not allow without a compare-and-set on every write.
+ */
+abstract class TopicArray {
+
+  static TopicArray create(int length, int topicCount) {
+    if (topicCount <= 1 << Byte.SIZE) {
+      return new ByteTopicArray(length);
+    }
+    if (topicCount <= 1 << Character.SIZE) {
+      return new CharTopicArray(length);
+    }
+    return new IntTopicArray(length);
+  }
+
+  /**
+   * Whether a topic array created for topicCount topics would have the same width as this.
+   */
+  boolean fits(int topicCount) {
+    return create(0, topicCount).getClass() == getClass();
+  }
+
+  abstract int get(int i);
+
+  abstract void set(int i, int topic);
+
+  abstract int length();
+
+  TopicArray copy() {
+    return copyOf(length());
+  }
+
+  /**
+   * A copy of the same width, truncated or padded with topic 0 to the given length.
+   */
+  abstract TopicArray copyOf(int length);
+
+  private static final class ByteTopicArray extends TopicArray {
+    private final byte[] topics;
+
+    ByteTopicArray(int length) {
+      topics = new byte[length];
+    }
+
+    @Override
+    int get(int i) {
+      return topics[i] & 0xFF;
+    }
+
+    @Override
+    void set(int i, int topic) {
+      topics[i] = (byte) topic;
+    }
+
+    @Override
+    int length() {
+      return topics.length;
+    }
+
+    @Override
+    TopicArray copyOf(int length) {
+      final ByteTopicArray copy = new ByteTopicArray(length);
+      System.arraycopy(topics, 0, copy.topics, 0, Math.min(length, topics.length));
+      return copy;
+    }
+  }
+
+  private static final class CharTopicArray extends TopicArray {
+    private final char[] topics;
+
+    CharTopicArray(int length) {
+      topics = new char[length];
+    }
+
+    @Override
+    int get(int i) {
+      return topics[i];
+    }
+
+    @Override
+    void set(int i, int topic) {
+      topics[i] = (char) topic;
+    }
+
+    @Override
+    int length() {
+      return topics.length;
+    }
+
+    @Override
+    TopicArray copyOf(int length) {
+      final CharTopicArray copy = new CharTopicArray(length);
+      System.arraycopy(topics, 0, copy.topics, 0, Math.min(length, topics.length));
+      return copy;
+    }
+  }
+
+  private static final class IntTopicArray extends TopicArray {
+    private final int[] topics;
+
+    IntTopicArray(int length) {
+      topics = new int[length];
+    }
+
+    @Override
+    int get(int i) {
+      return topics[i];
+    }
+
+    @Override
+    void set(int i, int topic) {
+      topics[i] = topic;
+    }
+
+    @Override
+    int length() {
+      return topics.length;
+    }
+
+    @Override
+    TopicArray copyOf(int length) {
+      final IntTopicArray copy = new IntTopicArray(length);
+      System.arraycopy(topics, 0, copy.topics, 0, Math.min(length, topics.length));
+      return copy;
+    }
+  }
+}
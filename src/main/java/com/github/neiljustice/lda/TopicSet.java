@@ -0,0 +1,58 @@
+package com.github.neiljustice.lda;
+
+import java.util.Arrays;
+
+/**
+ * A set of topics with O(1) add, remove and membership tests.  Members are stored
+ * contiguously so they can be iterated by position; removing a member moves the last
+ * member into its place.
+ */
+class TopicSet {
+  private final int[] members;
+  /** Position of each topic in members, or -1 if absent. */
+  private final int[] index;
+  private int size;
+
+  TopicSet(int topicCount) {
+    members = new int[topicCount];
+    index = new int[topicCount];
+    Arrays.fill(index, -1);
+  }
+
+  boolean contains(int topic) {
+    return index[topic] >= 0;
+  }
+
+  void add(int topic) {
+    if (index[topic] < 0) {
+      index[topic] = size;
+      members[size++] = topic;
+    }
+  }
+
+  void remove(int topic) {
+    final int i = index[topic];
+    if (i < 0) {
+      return;
+    }
+    final int last = members[--size];
+    members[i] = last;
+    index[last] = i;
+    index[topic] = -1;
+  }
+
+  int get(int i) {
+    return members[i];
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      index[members[i]] = -1;
+    }
+    size = 0;
+  }
+}
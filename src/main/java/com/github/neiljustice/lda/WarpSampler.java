@@ -0,0 +1,242 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.AliasTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * WarpLDA sampler, as laid out in Chen et al., 2016, "WarpLDA: a Cache Efficient O(1)
+ * Algorithm for Latent Dirichlet Allocation".
+ * <p>
+ * Each cycle is a word-major pass followed by a doc-major pass over the corpus:
+ * <ul>
+ * <li>the word pass visits the tokens of one word at a time, accepts or rejects the
+ * doc-proposals drawn in the previous doc pass, then draws new word-proposals, from
+ * n_wt + beta, by picking the topic of a random token of the same word;</li>
+ * <li>the doc pass visits the tokens of one document at a time, accepts or rejects the
+ * word-proposals, then draws new doc-proposals, from n_td + alpha_t, by picking the topic of
+ * a random token in the same document.</li>
+ * </ul>
+ * The word pass only reads and writes the current word's row of wordsInTopic, and the doc
+ * pass only the current document's row of topicsInDoc.  Changes the other pass makes are
+ * folded into each row when the pass reaches it, by comparing each token's topic with the
+ * topic it had when the row was last brought up to date.  The working set of each pass is
+ * therefore one row plus tokensInTopic, which stays in cache.
+ * <p>
+ * As in the paper, each acceptance test ignores the delayed part of the counts, which is
+ * what makes this cheap; the number of proposals per token per pass is set by
+ * {@link LDA#withMetropolisHastingsSteps(int)}.
+ */
+class WarpSampler implements Sampler {
+  private static final Logger LOGGER = LogManager.getLogger(WarpSampler.class);
+
+  private final LDA lda;
+  private final Corpus corpus;
+  private final int topicCount;
+  private final int[] docOffsets;
+  private final int[] wordOffsets;
+  private final int[] tokensByWord;
+  /** The topic of each token when its word's row was last brought up to date. */
+  private final int[] wordRowTopics;
+  /** The topic of each token when its document's row was last brought up to date. */
+  private final int[] docColumnTopics;
+  private final AliasTable alphaTable;
+  private final int[] tableWork;
+  /**
+   * proposals[i * steps .. (i + 1) * steps) are the pending proposals for token i.  Its
+   * length, tokenCount * steps, is checked when it is allocated, so no index into it can
+   * overflow.
+   */
+  private int[] proposals;
+  private int steps;
+  private long proposed;
+  private long accepted;
+
+  WarpSampler(LDA lda) {
+    this.lda = lda;
+    this.corpus = lda.corpus;
+    this.topicCount = lda.topicCount;
+
+    docOffsets = corpus.docOffsets();
+    wordOffsets = corpus.wordOffsets();
+    tokensByWord = corpus.tokensByWord();
+    wordRowTopics = new int[lda.tokenCount];
+    docColumnTopics = new int[lda.tokenCount];
+    for (int i = 0; i < lda.tokenCount; i++) {
+      wordRowTopics[i] = corpus.topic(i);
+      docColumnTopics[i] = corpus.topic(i);
+    }
+    alphaTable = new AliasTable(topicCount);
+    tableWork = new int[topicCount];
+  }
+
+  @Override
+  public void cycle() {
+    proposed = 0;
+    accepted = 0;
+    if (proposals == null || steps != lda.mhSteps) {
+      initProposals();
+    }
+    // alpha only changes between cycles, when it is optimised
+    alphaTable.build(lda.alpha, topicCount, tableWork);
+
+    for (int word = 0; word < lda.wordCount; word++) {
+      wordPass(word);
+    }
+    for (int doc = 0; doc < lda.docCount; doc++) {
+      docPass(doc);
+    }
+    // the doc pass moved tokens without updating the word rows
+    for (int i = 0; i < lda.tokenCount; i++) {
+      final int topic = corpus.topic(i);
+      if (topic != wordRowTopics[i]) {
+        lda.wordsInTopic.decrement(corpus.word(i), wordRowTopics[i]);
+        lda.wordsInTopic.increment(corpus.word(i), topic);
+        wordRowTopics[i] = topic;
+      }
+    }
+
+    LOGGER.info("MH acceptance rate: {}", acceptanceRate());
+  }
+
+  /**
+   * The proportion of Metropolis-Hastings proposals accepted during the last cycle.
+   */
+  double acceptanceRate() {
+    return proposed == 0 ? 0d : (double) accepted / proposed;
+  }
+
+  /**
+   * Start with every proposal equal to the current topic, which the first word pass accepts
+   * trivially.
+   */
+  private void initProposals() {
+    steps = lda.mhSteps;
+    final int length;
+    try {
+      length = Math.multiplyExact(lda.tokenCount, steps);
+    } catch (ArithmeticException e) {
+      throw new IllegalStateException("WARP cannot hold " + steps + " proposals for each of "
+          + lda.tokenCount + " tokens; use fewer Metropolis-Hastings steps or another sampler", e);
+    }
+    proposals = new int[length];
+    for (int i = 0; i < lda.tokenCount; i++) {
+      for (int m = 0; m < steps; m++) {
+        proposals[i * steps + m] = corpus.topic(i);
+      }
+    }
+  }
+
+  private void wordPass(int word) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final CountMatrix counts = lda.wordsInTopic;
+    final int start = wordOffsets[word];
+    final int end = wordOffsets[word + 1];
+    final int length = end - start;
+
+    for (int p = start; p < end; p++) {
+      final int i = tokensByWord[p];
+      final int topic = corpus.topic(i);
+      if (topic != wordRowTopics[i]) {
+        counts.decrement(word, wordRowTopics[i]);
+        counts.increment(word, topic);
+        wordRowTopics[i] = topic;
+      }
+    }
+
+    // accept doc-proposals: the doc part of the target cancels with the proposal
+    for (int p = start; p < end; p++) {
+      final int i = tokensByWord[p];
+      int current = corpus.topic(i);
+      for (int m = 0; m < steps; m++) {
+        final int proposal = proposals[i * steps + m];
+        proposed++;
+        if (proposal == current) {
+          accepted++;
+          continue;
+        }
+        final double ratio = ((counts.get(word, proposal) + lda.beta) * (lda.tokensInTopic[current] - 1 + lda.betaSum))
+            / ((counts.get(word, current) - 1 + lda.beta) * (lda.tokensInTopic[proposal] + lda.betaSum));
+        if (ratio >= 1d || random.nextDouble() < ratio) {
+          counts.decrement(word, current);
+          counts.increment(word, proposal);
+          lda.tokensInTopic[current]--;
+          lda.tokensInTopic[proposal]++;
+          current = proposal;
+          accepted++;
+        }
+      }
+      corpus.setTopic(i, current);
+      wordRowTopics[i] = current;
+    }
+
+    // draw word-proposals from n_wt + beta
+    final double smoothing = topicCount * lda.beta;
+    for (int p = start; p < end; p++) {
+      final int i = tokensByWord[p];
+      for (int m = 0; m < steps; m++) {
+        if (random.nextDouble() * (length + smoothing) < length) {
+          proposals[i * steps + m] = corpus.topic(tokensByWord[start + random.nextInt(length)]);
+        } else {
+          proposals[i * steps + m] = random.nextInt(topicCount);
+        }
+      }
+    }
+  }
+
+  private void docPass(int doc) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int start = docOffsets[doc];
+    final int end = docOffsets[doc + 1];
+    final int length = end - start;
+
+    for (int i = start; i < end; i++) {
+      final int topic = corpus.topic(i);
+      if (topic != docColumnTopics[i]) {
+        lda.topicsInDoc.decrement(doc, docColumnTopics[i]);
+        lda.topicsInDoc.increment(doc, topic);
+        docColumnTopics[i] = topic;
+      }
+    }
+
+    // accept word-proposals: the word part of the target cancels with the proposal
+    for (int i = start; i < end; i++) {
+      int current = corpus.topic(i);
+      for (int m = 0; m < steps; m++) {
+        final int proposal = proposals[i * steps + m];
+        proposed++;
+        if (proposal == current) {
+          accepted++;
+          continue;
+        }
+        final double ratio = ((lda.topicsInDoc.get(doc, proposal) + lda.alpha[proposal])
+            * (lda.tokensInTopic[current] - 1 + lda.betaSum))
+            / ((lda.topicsInDoc.get(doc, current) - 1 + lda.alpha[current])
+            * (lda.tokensInTopic[proposal] + lda.betaSum));
+        if (ratio >= 1d || random.nextDouble() < ratio) {
+          lda.topicsInDoc.decrement(doc, current);
+          lda.topicsInDoc.increment(doc, proposal);
+          lda.tokensInTopic[current]--;
+          lda.tokensInTopic[proposal]++;
+          current = proposal;
+          accepted++;
+        }
+      }
+      corpus.setTopic(i, current);
+      docColumnTopics[i] = current;
+    }
+
+    // draw doc-proposals from n_td + alpha_t
+    for (int i = start; i < end; i++) {
+      for (int m = 0; m < steps; m++) {
+        if (random.nextDouble() * (length + lda.alphaSum) < length) {
+          proposals[i * steps + m] = corpus.topic(start + random.nextInt(length));
+        } else {
+          proposals[i * steps + m] = alphaTable.sample();
+        }
+      }
+    }
+  }
+}
@@ -2,11 +2,20 @@ package com.github.neiljustice.lda.preprocess;
 
 import com.github.neiljustice.lda.Corpus;
 import com.github.neiljustice.lda.util.FileUtils;
+import com.github.neiljustice.lda.util.PackedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * Customisable wrapper around the classes used to preprocess text.
@@ -64,7 +73,7 @@ public class PreprocessingPipeline {
    * @param filename the path to the file to process.
    */
   public Corpus preprocess(String filename) {
-    return preprocess(FileUtils.readFile(filename));
+    return preprocess(new File(filename).toPath(), StandardCharsets.UTF_8);
   }
 
   /**
@@ -74,7 +83,7 @@ public class PreprocessingPipeline {
    * @param charset  the file encoding.
    */
   public Corpus preprocess(String filename, Charset charset) {
-    return preprocess(FileUtils.readFile(filename, charset));
+    return preprocess(new File(filename).toPath(), charset);
   }
 
   /**
@@ -85,7 +94,7 @@ public class PreprocessingPipeline {
    * @param file the file to process.
    */
   public Corpus preprocess(File file) {
-    return preprocess(FileUtils.readFile(file));
+    return preprocess(file.toPath(), StandardCharsets.UTF_8);
   }
 
   /**
@@ -95,7 +104,76 @@ public class PreprocessingPipeline {
    * @param charset the file encoding.
    */
   public Corpus preprocess(File file, Charset charset) {
-    return preprocess(FileUtils.readFile(file, charset));
+    return preprocess(file.toPath(), charset);
+  }
+
+  /**
+   * Load and pre-process a file.  Assumes that each line in the file represents a document.
+   * <p>
+   * The file is streamed through twice, a line at a time: once to count the tokens for the
+   * preprocessor, and once to turn the tokens it keeps straight into word ids.  Neither the
+   * lines nor their tokens are ever held all at once, so memory is bounded by the vocabulary
+   * and the packed word ids.  The corpus is the same as preprocessing the lines as a list
+   * with a fresh preprocessor.
+   *
+   * @param file    the file to process, which must not change while it is read.
+   * @param charset the file encoding.
+   */
+  public Corpus preprocess(Path file, Charset charset) {
+    preprocessor.reset();
+    final int[] docCount = new int[1];
+    forEachDocument(file, charset, (doc, tokens) -> {
+      stopwordsRemover.removeFrom(tokens, doc);
+      preprocessor.count(tokens);
+      docCount[0]++;
+    });
+    final long[] kept = preprocessor.keptCounts();
+    if (kept[1] > Integer.MAX_VALUE) {
+      throw new IllegalStateException("A corpus holds at most " + Integer.MAX_VALUE + " tokens, not " + kept[1]);
+    }
+
+    final Vocabulary.Builder dictionary = new Vocabulary.Builder((int) kept[0]);
+    final PackedIntArray words = new PackedIntArray((int) kept[1], (int) Math.max(0, kept[0] - 1));
+    final int[] docOffsets = new int[docCount[0] + 1];
+    forEachDocument(file, charset, (doc, tokens) -> {
+      if (doc == docCount[0]) {
+        throw new IllegalStateException(file + " changed while it was being read");
+      }
+      tokens.removeAll(stopwordsRemover.getStopwords());
+      int i = docOffsets[doc];
+      for (String token : tokens) {
+        if (preprocessor.keep(token)) {
+          final boolean changed = i == words.length()
+              || dictionary.size() == kept[0] && !dictionary.contains(token);
+          if (changed) {
+            throw new IllegalStateException(file + " changed while it was being read");
+          }
+          words.set(i++, dictionary.add(token));
+        }
+      }
+      docOffsets[doc + 1] = i;
+    });
+    if (docOffsets[docCount[0]] != words.length()) {
+      throw new IllegalStateException(file + " changed while it was being read");
+    }
+    return new Corpus(words, docOffsets, dictionary.build());
+  }
+
+  /**
+   * Clean and tokenise each line of a file in turn, and pass it on with its index.  Bytes
+   * which are not valid in the charset are replaced, as {@link FileUtils#readFile} does,
+   * rather than failing the whole file.
+   */
+  private void forEachDocument(Path file, Charset charset, BiConsumer<Integer, List<String>> action) {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), charset))) {
+      int doc = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        action.accept(doc++, tokeniser.tokenise(textCleaner.cleanText(line)));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   /**
@@ -111,6 +189,17 @@ public class PreprocessingPipeline {
     return new Corpus(tokenised);
   }
 
+  /**
+   * Clean and tokenise a single document and remove its stopwords, ready to be looked up in
+   * the dictionary of a trained model.  The preprocessor is not applied, since its filters
+   * are over a whole corpus; the words it dropped are not in the model's dictionary anyway.
+   */
+  public List<String> tokenise(String document) {
+    final List<String> tokens = tokeniser.tokenise(textCleaner.cleanText(document));
+    tokens.removeAll(stopwordsRemover.getStopwords());
+    return tokens;
+  }
+
   public TextCleaner getTextCleaner() {
     return textCleaner;
   }
@@ -227,24 +227,74 @@ public class Preprocessor {
   }
 
   public void process(List<List<String>> tokenisedDocuments) {
-    docCount = tokenisedDocuments.size();
-    buildFreqLists(tokenisedDocuments);
+    docCount = 0;
+    for (List<String> document : tokenisedDocuments) {
+      count(document);
+    }
     removeAll(tokenisedDocuments);
   }
 
-  private void buildFreqLists(List<List<String>> tokenisedDocuments) {
-    for (List<String> document : tokenisedDocuments) {
-      final Set<String> ocurredInDoc = new HashSet<>();
-      for (String token : document) {
-        wordFreqs.adjustOrPutValue(token, 1, 1);
-        if (!ocurredInDoc.contains(token)) {
-          perDocFreqs.adjustOrPutValue(token, 1, 1);
-          ocurredInDoc.add(token);
-        }
+  /**
+   * Forget the documents counted so far.
+   */
+  void reset() {
+    wordFreqs.clear();
+    perDocFreqs.clear();
+    docCount = 0;
+  }
+
+  /**
+   * Add a document to the counts which decide whether a token is kept.
+   */
+  void count(List<String> document) {
+    docCount++;
+    final Set<String> ocurredInDoc = new HashSet<>();
+    for (String token : document) {
+      wordFreqs.adjustOrPutValue(token, 1, 1);
+      if (!ocurredInDoc.contains(token)) {
+        perDocFreqs.adjustOrPutValue(token, 1, 1);
+        ocurredInDoc.add(token);
       }
     }
   }
 
+  /**
+   * Whether a token meets every criterion, given the documents counted so far.
+   */
+  boolean keep(String token) {
+    final int freq = wordFreqs.get(token);
+    final int docFreq = perDocFreqs.get(token);
+    final double docPerc = (double) docFreq / docCount;
+    final int length = token.length();
+    return !(useMaxFreq && freq > maxFreq)
+        && !(useMinFreq && freq < minFreq)
+        && !(useMaxPerc && docPerc > maxPerc)
+        && !(useMinPerc && docPerc < minPerc)
+        && !(useMaxDocs && docFreq > maxDocs)
+        && !(useMinDocs && docFreq < minDocs)
+        && !(useMaxLength && length > maxLength)
+        && !(useMinLength && length < minLength);
+  }
+
+  /**
+   * The distinct tokens and the total tokens which would be kept of the documents counted so
+   * far, as {words, tokens}.  Throws if none would be.
+   */
+  long[] keptCounts() {
+    final long[] counts = new long[2];
+    final long[] total = new long[1];
+    wordFreqs.forEachEntry((token, freq) -> {
+      total[0] += freq;
+      if (keep(token)) {
+        counts[0]++;
+        counts[1] += freq;
+      }
+      return true;
+    });
+    logKept(counts[1], total[0]);
+    return counts;
+  }
+
   private void removeAll(List<List<String>> tokenisedDocuments) {
     int kept = 0;
     int total = 0;
@@ -253,34 +303,20 @@ public class Preprocessor {
       final Iterator<String> it = document.iterator();
       while (it.hasNext()) {
         final String token = it.next();
-        final int freq = wordFreqs.get(token);
-        final int docFreq = perDocFreqs.get(token);
-        final double docPerc = (double) docFreq / docCount;
-        final int length = token.length();
         total++;
-        if (useMaxFreq && freq > maxFreq) {
-          it.remove();
-        } else if (useMinFreq && freq < minFreq) {
-          it.remove();
-        } else if (useMaxPerc && docPerc > maxPerc) {
-          it.remove();
-        } else if (useMinPerc && docPerc < minPerc) {
-          it.remove();
-        } else if (useMaxDocs && docFreq > maxDocs) {
-          it.remove();
-        } else if (useMinDocs && docFreq < minDocs) {
-          it.remove();
-        } else if (useMaxLength && length > maxLength) {
-          it.remove();
-        } else if (useMinLength && length < minLength) {
-          it.remove();
-        } else {
+        if (keep(token)) {
           kept++;
           LOG.debug("Kept token: {}", token);
+        } else {
+          it.remove();
         }
       }
     }
 
+    logKept(kept, total);
+  }
+
+  private static void logKept(long kept, long total) {
     LOG.info("Kept {} / {} tokens", kept, total);
     if (kept == 0) {
       throw new IllegalStateException("All tokens were removed by the preprocessor - review the token removal criteria");
@@ -38,11 +38,17 @@ public class StopwordsRemover {
 
   public void removeFrom(List<List<String>> tokenisedDocuments) {
     for (int i = 0; i < tokenisedDocuments.size(); i++) {
-      final List<String> document = tokenisedDocuments.get(i);
-      document.removeAll(stopwords);
-      if (document.isEmpty()) {
-        LOGGER.warn("Document " + i + " had no tokens after stopword removal");
-      }
+      removeFrom(tokenisedDocuments.get(i), i);
+    }
+  }
+
+  /**
+   * Remove the stopwords from document i.
+   */
+  void removeFrom(List<String> document, int i) {
+    document.removeAll(stopwords);
+    if (document.isEmpty()) {
+      LOGGER.warn("Document " + i + " had no tokens after stopword removal");
     }
   }
 }
\ No newline at end of file
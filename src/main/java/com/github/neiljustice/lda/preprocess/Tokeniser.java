@@ -23,12 +23,16 @@ public class Tokeniser {
   public List<List<String>> tokenise(List<String> documents) {
     final List<List<String>> results = new ArrayList<>();
     for (String document : documents) {
-      results.add(new ArrayList<>(Arrays.asList(document.split(delimiter))));
+      results.add(tokenise(document));
     }
 
     return results;
   }
 
+  public List<String> tokenise(String document) {
+    return new ArrayList<>(Arrays.asList(document.split(delimiter)));
+  }
+
   public String delimiter() {
     return delimiter;
   }
@@ -0,0 +1,118 @@
+package com.github.neiljustice.lda.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Walker's alias method, using Vose's construction.  After O(n) setup, draws from a
+ * discrete distribution over n outcomes in O(1).  Tables can be rebuilt in place, so
+ * one instance can be reused for the lifetime of a sampler.
+ */
+public class AliasTable {
+  private final int[] alias;
+  private final float[] probability;
+  private final float[] weights;
+  private int size;
+  private double mass;
+
+  /**
+   * @param capacity the largest number of outcomes the table will be built over.
+   */
+  public AliasTable(int capacity) {
+    alias = new int[capacity];
+    probability = new float[capacity];
+    weights = new float[capacity];
+  }
+
+  /**
+   * Build the table over the first size entries of the given unnormalised weights.
+   */
+  public void build(double[] weights, int size) {
+    build(weights, size, new int[size]);
+  }
+
+  /**
+   * Build the table over the first size entries of the given unnormalised weights.
+   *
+   * @param work scratch space of at least size entries, so that callers rebuilding many
+   *             tables need not allocate.
+   */
+  public void build(double[] weights, int size, int[] work) {
+    double sum = 0d;
+    for (int i = 0; i < size; i++) {
+      this.weights[i] = (float) weights[i];
+      sum += weights[i];
+    }
+    if (!(sum > 0d)) {
+      throw new IllegalArgumentException("Weights must have a positive sum: " + sum);
+    }
+    this.size = size;
+    this.mass = sum;
+
+    // work holds two stacks: outcomes below the average weight grow up from the front,
+    // and outcomes above it grow down from the back.
+    int small = 0;
+    int large = size;
+    for (int i = 0; i < size; i++) {
+      probability[i] = (float) (weights[i] * size / sum);
+      if (probability[i] < 1f) {
+        work[small++] = i;
+      } else {
+        work[--large] = i;
+      }
+    }
+
+    while (small > 0 && large < size) {
+      final int less = work[--small];
+      final int more = work[large++];
+      alias[less] = more;
+      probability[more] += probability[less] - 1f;
+      if (probability[more] < 1f) {
+        work[small++] = more;
+      } else {
+        work[--large] = more;
+      }
+    }
+
+    // anything left over is only off by rounding error
+    while (large < size) {
+      probability[work[large++]] = 1f;
+    }
+    while (small > 0) {
+      probability[work[--small]] = 1f;
+    }
+  }
+
+  public int sample() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int i = random.nextInt(size);
+    return random.nextFloat() < probability[i] ? i : alias[i];
+  }
+
+  /**
+   * Copy the table as built into flat arrays, from the given offset, so that many fixed
+   * tables can be kept without an object each.  Outcome i of the copy is drawn as for
+   * {@link #sample()}: i with probability probability[offset + i], else alias[offset + i].
+   */
+  public void copyTo(int[] alias, float[] probability, int offset) {
+    System.arraycopy(this.alias, 0, alias, offset, size);
+    System.arraycopy(this.probability, 0, probability, offset, size);
+  }
+
+  /**
+   * The unnormalised weight the table was built with for this outcome.
+   */
+  public double weight(int i) {
+    return weights[i];
+  }
+
+  /**
+   * The sum of the weights the table was built with.
+   */
+  public double mass() {
+    return mass;
+  }
+
+  public int size() {
+    return size;
+  }
+}
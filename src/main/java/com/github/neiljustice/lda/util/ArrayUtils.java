@@ -0,0 +1,41 @@
+package com.github.neiljustice.lda.util;
+
+import java.util.Arrays;
+
+public class ArrayUtils {
+  private ArrayUtils() {
+    // Disable instantiation
+  }
+
+  /**
+   * The length to reallocate an array of the given length to so that it holds at least needed
+   * elements.  Grows by half again at a time, so that filling an array by appending to it
+   * costs amortised O(1) per element.
+   */
+  public static int grownLength(int length, int needed) {
+    if (needed < 0) {
+      throw new IllegalArgumentException("Arrays can hold at most " + Integer.MAX_VALUE + " elements");
+    }
+    if (needed <= length) {
+      return length;
+    }
+    final long grown = Math.min(Integer.MAX_VALUE - 8, length + (length >> 1) + 16L);
+    return (int) Math.max(needed, grown);
+  }
+
+  public static byte[] grow(byte[] array, int needed) {
+    return needed <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, needed));
+  }
+
+  public static int[] grow(int[] array, int needed) {
+    return needed <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, needed));
+  }
+
+  public static double[] grow(double[] array, int needed) {
+    return needed <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, needed));
+  }
+
+  public static double[][] grow(double[][] array, int needed) {
+    return needed <= array.length ? array : Arrays.copyOf(array, grownLength(array.length, needed));
+  }
+}
@@ -0,0 +1,11 @@
+package com.github.neiljustice.lda.util;
+
+/**
+ * A read-only view of a fixed-length array of ints, wherever it is stored.
+ */
+public interface IntArray {
+
+  int get(int i);
+
+  int length();
+}
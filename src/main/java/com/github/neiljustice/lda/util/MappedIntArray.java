@@ -0,0 +1,109 @@
+package com.github.neiljustice.lda.util;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fixed-length array of non-negative ints, each stored little-endian in 1, 2 or 4 bytes of a
+ * memory-mapped file, so that it lives in the OS page cache rather than on the heap.
+ * <p>
+ * Writing a value never touches its neighbours' bytes, so different threads can write to
+ * different indexes at the same time.  Writes reach the file when the OS writes the pages
+ * back, even if the JVM dies first; {@link #force()} waits for them to reach the disk.
+ */
+public final class MappedIntArray implements IntArray {
+  private final int length;
+  private final int width;
+  private final int widthShift;
+  private final int segmentShift;
+  private final int segmentMask;
+  private final MappedByteBuffer[] segments;
+
+  private MappedIntArray(int length, int width, MappedByteBuffer[] segments) {
+    this.length = length;
+    this.width = width;
+    widthShift = Integer.numberOfTrailingZeros(width);
+    segmentShift = MappedSegments.SEGMENT_SHIFT - widthShift;
+    segmentMask = (1 << segmentShift) - 1;
+    this.segments = segments;
+  }
+
+  /**
+   * Map a region of a file as an array.  The channel may be closed once this returns.
+   *
+   * @param channel the file, which must be at least position + length * width bytes long
+   *     unless mapped read-write, in which case it is extended.
+   * @param position the offset of the first value in the file.
+   * @param length the number of values.
+   * @param width the bytes per value: 1, 2 or 4.
+   * @param mode read-only, or read-write to write through to the file.
+   */
+  public static MappedIntArray map(FileChannel channel, long position, int length, int width,
+                                   FileChannel.MapMode mode) {
+    if (width != 1 && width != 2 && width != 4) {
+      throw new IllegalArgumentException("Width must be 1, 2 or 4 bytes, not " + width);
+    }
+    final MappedByteBuffer[] segments = MappedSegments.map(channel, position, (long) length * width, mode);
+    return new MappedIntArray(length, width, segments);
+  }
+
+  /**
+   * The narrowest width, in bytes, which holds every value from 0 to maxValue.
+   */
+  public static int widthFor(int maxValue) {
+    if (maxValue < 0) {
+      throw new IllegalArgumentException("Values must be non-negative");
+    }
+    if (maxValue <= 0xFF) {
+      return 1;
+    }
+    return maxValue <= 0xFFFF ? 2 : 4;
+  }
+
+  @Override
+  public int get(int i) {
+    final MappedByteBuffer segment = segments[i >>> segmentShift];
+    final int position = (i & segmentMask) << widthShift;
+    switch (width) {
+      case 1:
+        return segment.get(position) & 0xFF;
+      case 2:
+        return segment.getChar(position);
+      default:
+        return segment.getInt(position);
+    }
+  }
+
+  public void set(int i, int value) {
+    final MappedByteBuffer segment = segments[i >>> segmentShift];
+    final int position = (i & segmentMask) << widthShift;
+    switch (width) {
+      case 1:
+        segment.put(position, (byte) value);
+        break;
+      case 2:
+        segment.putChar(position, (char) value);
+        break;
+      default:
+        segment.putInt(position, value);
+    }
+  }
+
+  /**
+   * Wait until every write so far has reached the disk.
+   */
+  public void force() {
+    for (MappedByteBuffer segment : segments) {
+      segment.force();
+    }
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  public int width() {
+    return width;
+  }
+}
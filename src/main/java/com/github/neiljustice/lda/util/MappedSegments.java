@@ -0,0 +1,42 @@
+package com.github.neiljustice.lda.util;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps a file region of any size as a run of little-endian buffers of {@link #SEGMENT_BYTES}
+ * each, the last perhaps shorter, since a single buffer can only map 2GB.  Byte b of the
+ * region is byte (b & SEGMENT_MASK) of segment b >>> SEGMENT_SHIFT.  Values whose width is a
+ * power of two, and which are aligned to it, never straddle two segments.
+ */
+public final class MappedSegments {
+  public static final int SEGMENT_SHIFT = 30;
+  public static final int SEGMENT_BYTES = 1 << SEGMENT_SHIFT;
+  public static final int SEGMENT_MASK = SEGMENT_BYTES - 1;
+
+  private MappedSegments() {
+    // Prevent static class instantiation.
+  }
+
+  /**
+   * @param channel the file, which must hold the region unless mapped read-write, in which
+   *     case it is extended.  It may be closed once this returns.
+   */
+  public static MappedByteBuffer[] map(FileChannel channel, long position, long bytes,
+                                       FileChannel.MapMode mode) {
+    final int count = (int) ((bytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT);
+    final MappedByteBuffer[] segments = new MappedByteBuffer[count];
+    try {
+      for (int s = 0; s < count; s++) {
+        final long start = (long) s << SEGMENT_SHIFT;
+        segments[s] = channel.map(mode, position + start, Math.min(SEGMENT_BYTES, bytes - start));
+        segments[s].order(ByteOrder.LITTLE_ENDIAN);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return segments;
+  }
+}
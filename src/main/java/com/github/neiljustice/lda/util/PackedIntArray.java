@@ -0,0 +1,90 @@
+package com.github.neiljustice.lda.util;
+
+/**
+ * A fixed-length array of non-negative ints, each stored in the same number of bits, packed
+ * end to end in a long[].  A value may straddle two longs.
+ * <p>
+ * Not safe for concurrent writes, even to different indexes, since neighbouring values can
+ * share a long.
+ */
+public final class PackedIntArray implements IntArray {
+  private final int length;
+  private final int bits;
+  private final long mask;
+  private final long[] data;
+
+  /**
+   * @param length the number of values.
+   * @param maxValue the largest value which will be stored.
+   */
+  public PackedIntArray(int length, int maxValue) {
+    this.length = length;
+    bits = bitsFor(maxValue);
+    mask = (1L << bits) - 1;
+    data = new long[longsFor(length, bits)];
+  }
+
+  public PackedIntArray(PackedIntArray other) {
+    length = other.length;
+    bits = other.bits;
+    mask = other.mask;
+    data = other.data.clone();
+  }
+
+  /**
+   * The number of bits needed to store every value from 0 to maxValue; at least 1.
+   */
+  public static int bitsFor(int maxValue) {
+    if (maxValue < 0) {
+      throw new IllegalArgumentException("Values must be non-negative");
+    }
+    return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+  }
+
+  /**
+   * Room for length values of the given width, plus one spare long so that reading the
+   * last value never needs a bounds check of its own.
+   */
+  private static int longsFor(int length, int bits) {
+    final long longs = ((long) length * bits + 63) / 64 + 1;
+    if (longs > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(length + " values of " + bits + " bits is too many");
+    }
+    return (int) longs;
+  }
+
+  @Override
+  public int get(int i) {
+    final long bitIndex = (long) i * bits;
+    final int word = (int) (bitIndex >>> 6);
+    final int shift = (int) bitIndex & 63;
+    long value = data[word] >>> shift;
+    if (shift + bits > 64) {
+      value |= data[word + 1] << (64 - shift);
+    }
+    return (int) (value & mask);
+  }
+
+  public void set(int i, int value) {
+    if ((value & ~mask) != 0) {
+      throw new IllegalArgumentException(value + " does not fit in " + bits + " bits");
+    }
+    final long bitIndex = (long) i * bits;
+    final int word = (int) (bitIndex >>> 6);
+    final int shift = (int) bitIndex & 63;
+    data[word] = (data[word] & ~(mask << shift)) | ((long) value << shift);
+    if (shift + bits > 64) {
+      final int low = 64 - shift;
+      data[word + 1] = (data[word + 1] & ~(mask >>> low)) | ((long) value >>> low);
+    }
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  public int bits() {
+    return bits;
+  }
+}
@@ -0,0 +1,63 @@
+package com.github.neiljustice.lda.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadUtils {
+  private ThreadUtils() {
+    // Disable instantiation
+  }
+
+  /**
+   * A fixed-size pool of daemon threads.  Idle threads exit after a minute, so a pool which
+   * is no longer used does not need to be shut down.
+   *
+   * @param threads the number of threads.
+   * @param name    prefix for the thread names.
+   */
+  public static ExecutorService newDaemonPool(int threads, String name) {
+    final AtomicInteger count = new AtomicInteger();
+    final ThreadFactory factory = runnable -> {
+      final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+        new LinkedBlockingQueue<>(), factory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Run the tasks and wait for all of them to finish.  Failures are rethrown unchecked.
+   *
+   * @return the results, in the order of the tasks.
+   */
+  public static <T> List<T> invokeAll(ExecutorService executor, Collection<? extends Callable<T>> tasks) {
+    try {
+      final List<T> results = new ArrayList<>(tasks.size());
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,549 @@
+package com.github.neiljustice.lda.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An immutable mapping between words and consecutive ids from zero, for sharing by reference
+ * between corpora and models.
+ * <p>
+ * The words are stored end to end as UTF-8 in a single byte[], and indexed by an
+ * open-addressing hash table of ids, so a word costs its bytes plus 16 to 24 bytes, rather
+ * than a String, its char[] and a map entry.  Each word's start and hash sit side by side,
+ * so a lookup which finds its word touches the table, the entry and the bytes and nothing
+ * else.  Words can be looked up from any CharSequence, or from UTF-8 bytes, without
+ * allocating; only {@link #getToken(int)} creates a String.
+ * <p>
+ * A hashed vocabulary, from {@link Builder#hashing(int, int)}, has no table: every word maps
+ * to one of 2^bits buckets by its hash, so its size is fixed however many distinct words
+ * there are, and no word is ever missing.  The "word" of a bucket is a label made of the
+ * most frequent words seen in it, such as "fox|foxes", so topics can still be read.
+ * <p>
+ * Build one with a {@link Builder}.
+ */
+public final class Vocabulary {
+  private static final int EMPTY = -1;
+
+  private final int size;
+  private final byte[] utf8;
+  /**
+   * Word w is the bytes [entries[2w], entries[2w + 2]) of utf8, and its hash is
+   * entries[2w + 1].
+   */
+  private final int[] entries;
+  /** Word ids by hash, or EMPTY.  Null if hashed. */
+  private final int[] table;
+  /** 0 unless hashed. */
+  private final int hashBits;
+
+  private Vocabulary(byte[] utf8, int[] entries, int size, int hashBits) {
+    this.size = size;
+    this.utf8 = utf8;
+    this.entries = entries;
+    this.hashBits = hashBits;
+    if (hashBits > 0) {
+      if (size != 1 << hashBits) {
+        throw new IllegalArgumentException("A vocabulary hashed to " + hashBits + " bits has " + (1 << hashBits)
+            + " buckets, not " + size);
+      }
+      table = null;
+      return;
+    }
+    table = newTable(size);
+    for (int word = 0; word < size; word++) {
+      if (find(word) != EMPTY) {
+        throw new IllegalArgumentException("The word " + getToken(word) + " appears twice");
+      }
+      insert(table, entries[2 * word + 1], word);
+    }
+  }
+
+  /**
+   * A vocabulary over words which are already encoded end to end as UTF-8.  The bytes are
+   * used as they are, not copied, and must not be changed afterwards.
+   *
+   * @param offsets word w is the bytes [offsets[w], offsets[w + 1]) of utf8.
+   * @throws IllegalArgumentException if a word appears twice.
+   */
+  public static Vocabulary fromUtf8(byte[] utf8, int[] offsets) {
+    return fromUtf8(utf8, offsets, 0);
+  }
+
+  /**
+   * A vocabulary over words, or over bucket labels if hashBits is not 0, which are already
+   * encoded end to end as UTF-8.
+   *
+   * @see #fromUtf8(byte[], int[])
+   */
+  public static Vocabulary fromUtf8(byte[] utf8, int[] offsets, int hashBits) {
+    final int size = offsets.length - 1;
+    final int[] entries = new int[2 * size + 1];
+    for (int word = 0; word < size; word++) {
+      entries[2 * word] = offsets[word];
+      entries[2 * word + 1] = hash(utf8, offsets[word], offsets[word + 1]);
+    }
+    entries[2 * size] = offsets[size];
+    return new Vocabulary(utf8, entries, size, hashBits);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The number of bits words are hashed to, or 0 if each word has an id of its own.
+   */
+  public int hashBits() {
+    return hashBits;
+  }
+
+  public String getToken(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Word " + index + " of " + size);
+    }
+    return decode(utf8, entries, index);
+  }
+
+  public boolean contains(CharSequence token) {
+    return getIndex(token) != EMPTY;
+  }
+
+  /**
+   * Returns -1 if the token is not in the vocabulary, and its bucket if it is hashed.
+   */
+  public int getIndex(CharSequence token) {
+    if (hashBits > 0) {
+      return hash(token) & (size - 1);
+    }
+    return lookup(table, entries, utf8, token, hash(token));
+  }
+
+  /**
+   * The id of the word whose UTF-8 encoding is bytes [from, to), or -1 if there is none.
+   */
+  public int getIndex(byte[] bytes, int from, int to) {
+    final int hash = hash(bytes, from, to);
+    if (hashBits > 0) {
+      return hash & (size - 1);
+    }
+    final int mask = table.length - 1;
+    for (int slot = hash & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+      final int word = table[slot];
+      if (entries[2 * word + 1] == hash
+          && equals(utf8, entries[2 * word], entries[2 * word + 2], bytes, from, to)) {
+        return word;
+      }
+    }
+    return EMPTY;
+  }
+
+  /**
+   * The number of bytes of the word's UTF-8 encoding.
+   */
+  public int utf8Length(int index) {
+    return entries[2 * index + 2] - entries[2 * index];
+  }
+
+  /**
+   * Copy the word's UTF-8 encoding into dest, starting at at.
+   */
+  public void getUtf8(int index, byte[] dest, int at) {
+    System.arraycopy(utf8, entries[2 * index], dest, at, utf8Length(index));
+  }
+
+  /**
+   * The id of an existing word equal to that of the given id, or EMPTY.
+   */
+  private int find(int word) {
+    final int mask = table.length - 1;
+    final int hash = entries[2 * word + 1];
+    for (int slot = hash & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+      final int other = table[slot];
+      if (entries[2 * other + 1] == hash && equals(utf8, entries[2 * other], entries[2 * other + 2],
+          utf8, entries[2 * word], entries[2 * word + 2])) {
+        return other;
+      }
+    }
+    return EMPTY;
+  }
+
+  /**
+   * A table with room for size words at a load of at most a half.
+   */
+  private static int[] newTable(int size) {
+    final int[] table = new int[Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1];
+    Arrays.fill(table, EMPTY);
+    return table;
+  }
+
+  private static void insert(int[] table, int hash, int word) {
+    final int mask = table.length - 1;
+    int slot = hash & mask;
+    while (table[slot] != EMPTY) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = word;
+  }
+
+  private static String decode(byte[] utf8, int[] entries, int word) {
+    return new String(utf8, entries[2 * word], entries[2 * word + 2] - entries[2 * word], StandardCharsets.UTF_8);
+  }
+
+  private static int lookup(int[] table, int[] entries, byte[] utf8, CharSequence token, int hash) {
+    final int mask = table.length - 1;
+    for (int slot = hash & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+      final int word = table[slot];
+      if (entries[2 * word + 1] == hash && equals(token, utf8, entries[2 * word], entries[2 * word + 2])) {
+        return word;
+      }
+    }
+    return EMPTY;
+  }
+
+  /**
+   * The code point at i, or '?' for an unpaired surrogate, which is how String.getBytes
+   * encodes one.
+   */
+  private static int codePointAt(CharSequence token, int i) {
+    final char c = token.charAt(i);
+    if (!Character.isSurrogate(c)) {
+      return c;
+    }
+    if (Character.isHighSurrogate(c) && i + 1 < token.length() && Character.isLowSurrogate(token.charAt(i + 1))) {
+      return Character.toCodePoint(c, token.charAt(i + 1));
+    }
+    return '?';
+  }
+
+  private static int encodedLength(int codePoint) {
+    if (codePoint < 0x80) {
+      return 1;
+    }
+    if (codePoint < 0x800) {
+      return 2;
+    }
+    return codePoint < 0x10000 ? 3 : 4;
+  }
+
+  /**
+   * Byte j of the length-byte UTF-8 encoding of the code point.
+   */
+  private static byte encodedByte(int codePoint, int length, int j) {
+    if (length == 1) {
+      return (byte) codePoint;
+    }
+    final int bits = codePoint >>> 6 * (length - 1 - j);
+    return (byte) (j == 0 ? (0xFF00 >>> length) | bits : 0x80 | bits & 0x3F);
+  }
+
+  private static boolean equals(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+    if (aTo - aFrom != bTo - bFrom) {
+      return false;
+    }
+    for (int i = 0; i < aTo - aFrom; i++) {
+      if (a[aFrom + i] != b[bFrom + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equals(CharSequence token, byte[] utf8, int from, int to) {
+    final int chars = token.length();
+    if (to - from == chars) {
+      // most likely ASCII, which needs no encoding
+      int i = 0;
+      while (i < chars && token.charAt(i) < 0x80 && utf8[from + i] == token.charAt(i)) {
+        i++;
+      }
+      if (i == chars) {
+        return true;
+      }
+      if (token.charAt(i) < 0x80) {
+        return false;
+      }
+    }
+    int at = from;
+    for (int i = 0; i < token.length(); ) {
+      final char c = token.charAt(i);
+      if (c < 0x80) {
+        if (at == to || utf8[at++] != c) {
+          return false;
+        }
+        i++;
+        continue;
+      }
+      final int codePoint = codePointAt(token, i);
+      final int length = encodedLength(codePoint);
+      if (at + length > to) {
+        return false;
+      }
+      for (int j = 0; j < length; j++) {
+        if (utf8[at++] != encodedByte(codePoint, length, j)) {
+          return false;
+        }
+      }
+      i += Character.charCount(codePoint);
+    }
+    return at == to;
+  }
+
+  private static int utf8Length(CharSequence token) {
+    int length = 0;
+    for (int i = 0; i < token.length(); ) {
+      final int codePoint = codePointAt(token, i);
+      length += encodedLength(codePoint);
+      i += Character.charCount(codePoint);
+    }
+    return length;
+  }
+
+  /**
+   * FNV-1a over the UTF-8 encoding, finished with MurmurHash3's mix so the low bits, which
+   * pick the slot, depend on every byte.
+   */
+  private static int hash(CharSequence token) {
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < token.length(); ) {
+      final char c = token.charAt(i);
+      if (c < 0x80) {
+        hash = (hash ^ c) * 0x01000193;
+        i++;
+        continue;
+      }
+      final int codePoint = codePointAt(token, i);
+      final int length = encodedLength(codePoint);
+      for (int j = 0; j < length; j++) {
+        hash = (hash ^ (encodedByte(codePoint, length, j) & 0xFF)) * 0x01000193;
+      }
+      i += Character.charCount(codePoint);
+    }
+    return mix(hash);
+  }
+
+  private static int hash(byte[] bytes, int from, int to) {
+    int hash = 0x811c9dc5;
+    for (int i = from; i < to; i++) {
+      hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+    }
+    return mix(hash);
+  }
+
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    return hash ^ hash >>> 16;
+  }
+
+  /**
+   * Assigns ids to words in the order they are first added, or to buckets by their hashes.
+   * Not safe for concurrent use.
+   */
+  public static final class Builder {
+    private int size;
+    private byte[] utf8;
+    private int[] entries;
+    private int[] table;
+    private int hashBits;
+    private int samplesPerBucket;
+    /** The words seen most in each bucket, samplesPerBucket to a bucket, if hashed. */
+    private String[] samples;
+    private int[] sampleCounts;
+
+    public Builder() {
+      this(16);
+    }
+
+    /**
+     * @param capacity the number of words to make room for up front.
+     */
+    public Builder(int capacity) {
+      utf8 = new byte[(int) Math.min(Integer.MAX_VALUE - 8, 8L * capacity)];
+      entries = new int[2 * capacity + 1];
+      table = newTable(capacity);
+    }
+
+    /**
+     * A builder which hashes words into 2^bits buckets, and keeps a sample of the words seen
+     * most often in each of them, to label it.  Memory is fixed by bits and samplesPerBucket,
+     * whatever the number of distinct words.
+     *
+     * @param samplesPerBucket words to keep per bucket, or 0 to label buckets by number.
+     */
+    public static Builder hashing(int bits, int samplesPerBucket) {
+      if (bits < 1 || bits > 30) {
+        throw new IllegalArgumentException("Words can be hashed to between 1 and 30 bits, not " + bits);
+      }
+      if (samplesPerBucket < 0) {
+        throw new IllegalArgumentException("Samples per bucket must be non-negative");
+      }
+      final int sampleSlots;
+      try {
+        sampleSlots = Math.multiplyExact(1 << bits, samplesPerBucket);
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("Cannot keep " + samplesPerBucket + " samples in each of 2^" + bits
+            + " buckets; use fewer bits or samples", e);
+      }
+      final Builder builder = new Builder(0);
+      builder.hashBits = bits;
+      builder.size = 1 << bits;
+      builder.samplesPerBucket = samplesPerBucket;
+      builder.samples = new String[sampleSlots];
+      builder.sampleCounts = new int[sampleSlots];
+      return builder;
+    }
+
+    /**
+     * A builder which starts with the words of the vocabulary, under the same ids.
+     *
+     * @throws IllegalArgumentException if the vocabulary is hashed.
+     */
+    public Builder(Vocabulary vocabulary) {
+      if (vocabulary.hashBits > 0) {
+        throw new IllegalArgumentException("A hashed vocabulary already holds every word");
+      }
+      size = vocabulary.size;
+      utf8 = vocabulary.utf8.clone();
+      entries = vocabulary.entries.clone();
+      table = vocabulary.table.clone();
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public String getToken(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Word " + index + " of " + size);
+      }
+      return hashBits > 0 ? label(index) : decode(utf8, entries, index);
+    }
+
+    public boolean contains(CharSequence token) {
+      return getIndex(token) != EMPTY;
+    }
+
+    /**
+     * Returns -1 if the token has not been added, and its bucket if hashing.
+     */
+    public int getIndex(CharSequence token) {
+      if (hashBits > 0) {
+        return hash(token) & (size - 1);
+      }
+      return lookup(table, entries, utf8, token, hash(token));
+    }
+
+    /**
+     * Adds a token and returns its id.  If the token is already present, returns its
+     * existing id.
+     */
+    public int add(CharSequence token) {
+      final int hash = hash(token);
+      if (hashBits > 0) {
+        final int bucket = hash & (size - 1);
+        sample(bucket, token);
+        return bucket;
+      }
+      final int existing = lookup(table, entries, utf8, token, hash);
+      if (existing != EMPTY) {
+        return existing;
+      }
+
+      final int start = entries[2 * size];
+      final int end = Math.addExact(start, utf8Length(token));
+      utf8 = ArrayUtils.grow(utf8, end);
+      entries = ArrayUtils.grow(entries, 2 * size + 3);
+      int at = start;
+      for (int i = 0; i < token.length(); ) {
+        final int codePoint = codePointAt(token, i);
+        final int length = encodedLength(codePoint);
+        for (int j = 0; j < length; j++) {
+          utf8[at++] = encodedByte(codePoint, length, j);
+        }
+        i += Character.charCount(codePoint);
+      }
+      entries[2 * size + 1] = hash;
+      entries[2 * size + 2] = end;
+      if (2 * (size + 1) > table.length) {
+        table = newTable(size + 1);
+        for (int word = 0; word < size; word++) {
+          insert(table, entries[2 * word + 1], word);
+        }
+      }
+      insert(table, hash, size);
+      return size++;
+    }
+
+    /**
+     * Count the token towards its bucket's sample.  A token not in a full sample takes the
+     * place of the least counted one, and its count plus one, as in the Space-Saving
+     * algorithm, so a word which is frequent in its bucket soon gets in and stays.
+     */
+    private void sample(int bucket, CharSequence token) {
+      final int start = bucket * samplesPerBucket;
+      int least = start;
+      for (int i = start; i < start + samplesPerBucket; i++) {
+        if (samples[i] == null) {
+          samples[i] = token.toString();
+          sampleCounts[i] = 1;
+          return;
+        }
+        if (samples[i].contentEquals(token)) {
+          sampleCounts[i]++;
+          return;
+        }
+        if (sampleCounts[i] < sampleCounts[least]) {
+          least = i;
+        }
+      }
+      if (samplesPerBucket > 0) {
+        samples[least] = token.toString();
+        sampleCounts[least]++;
+      }
+    }
+
+    /**
+     * The bucket's sampled words, most counted first, or its number if it has none.
+     */
+    private String label(int bucket) {
+      final int start = bucket * samplesPerBucket;
+      final Integer[] order = new Integer[samplesPerBucket];
+      int count = 0;
+      for (int i = start; i < start + samplesPerBucket && samples[i] != null; i++) {
+        order[count++] = i;
+      }
+      if (count == 0) {
+        return "#" + bucket;
+      }
+      Arrays.sort(order, 0, count, (a, b) -> Integer.compare(sampleCounts[b], sampleCounts[a]));
+      final StringBuilder label = new StringBuilder(samples[order[0]]);
+      for (int i = 1; i < count; i++) {
+        label.append('|').append(samples[order[i]]);
+      }
+      return label.toString();
+    }
+
+    /**
+     * The words added so far, trimmed to size, or the buckets and their labels as they
+     * stand.  The builder can carry on being used.
+     */
+    public Vocabulary build() {
+      if (hashBits > 0) {
+        final byte[][] labels = new byte[size][];
+        final int[] offsets = new int[size + 1];
+        for (int bucket = 0; bucket < size; bucket++) {
+          labels[bucket] = label(bucket).getBytes(StandardCharsets.UTF_8);
+          offsets[bucket + 1] = Math.addExact(offsets[bucket], labels[bucket].length);
+        }
+        final byte[] bytes = new byte[offsets[size]];
+        for (int bucket = 0; bucket < size; bucket++) {
+          System.arraycopy(labels[bucket], 0, bytes, offsets[bucket], labels[bucket].length);
+        }
+        return fromUtf8(bytes, offsets, hashBits);
+      }
+      return new Vocabulary(Arrays.copyOf(utf8, entries[2 * size]), Arrays.copyOf(entries, 2 * size + 1), size, 0);
+    }
+  }
+}
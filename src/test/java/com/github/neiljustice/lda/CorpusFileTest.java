@@ -0,0 +1,100 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import com.github.neiljustice.lda.util.Vocabulary;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorpusFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldReadBackTheCorpusAndTopics() throws Exception {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(100, 100));
+    final Path file = folder.newFile().toPath();
+    CorpusFile.write(corpus, file);
+
+    final Corpus read = CorpusFile.read(file);
+    assertCorpusEqual(corpus, read);
+    assertEquals(0, read.topicCount());
+    assertEquals(-1, read.topic(0));
+
+    final LDA lda = new LDA(read, 2);
+    lda.train(100, 10, 5, 20, 10);
+    LDATest.assertTopicsDetected(lda.getTopics(4));
+
+    CorpusFile.write(read, file);
+    final Corpus reread = CorpusFile.read(file);
+    assertCorpusEqual(corpus, reread);
+    assertEquals(2, reread.topicCount());
+    for (int i = 0; i < read.size(); i++) {
+      assertEquals(read.topic(i), reread.topic(i));
+    }
+  }
+
+  @Test
+  public void shouldReadMultiByteWordsAndEmptyDocuments() throws Exception {
+    final Corpus corpus = new Corpus(Arrays.asList(
+        Collections.<String>emptyList(),
+        Arrays.asList("naïve", "日本", "naïve"),
+        Collections.<String>emptyList()));
+    final Path file = folder.newFile().toPath();
+    CorpusFile.write(corpus, file);
+
+    assertCorpusEqual(corpus, CorpusFile.read(file));
+  }
+
+  @Test
+  public void shouldKeepHashedWordsAndTheirLabels() throws Exception {
+    final List<List<String>> docs = new ArrayList<>();
+    for (String doc : LDATest.generateDocs(100, 100)) {
+      docs.add(Arrays.asList(doc.split(" ")));
+    }
+    final Corpus corpus = new Corpus(docs, Vocabulary.Builder.hashing(8, 2));
+    final Path file = folder.newFile().toPath();
+    CorpusFile.write(corpus, file);
+
+    final Corpus read = CorpusFile.read(file);
+    assertCorpusEqual(corpus, read);
+    assertEquals(256, read.wordCount());
+    assertEquals(8, read.dictionary().hashBits());
+    assertEquals(corpus.word(0), read.dictionary().getIndex(docs.get(0).get(0)));
+    assertEquals(docs.get(0).get(0), read.dictionary().getToken(read.word(0)));
+
+    final LDA lda = new LDA(read, 2);
+    lda.train(100, 10, 5, 20, 10);
+    LDATest.assertTopicsDetected(lda.getTopics(4));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectOtherFiles() throws Exception {
+    final Path file = folder.newFile().toPath();
+    Files.write(file, new byte[64]);
+    CorpusFile.read(file);
+  }
+
+  private static void assertCorpusEqual(Corpus expected, Corpus actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.docCount(), actual.docCount());
+    assertEquals(expected.wordCount(), actual.wordCount());
+    for (int doc = 0; doc < expected.docCount(); doc++) {
+      assertEquals(expected.docEnd(doc), actual.docEnd(doc));
+    }
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.word(i), actual.word(i));
+      assertEquals(expected.dictionary().getToken(expected.word(i)), actual.dictionary().getToken(actual.word(i)));
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.github.neiljustice.lda;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CorpusTest {
+
+  @Test
+  public void shouldFindDocumentsAroundEmptyOnes() {
+    final List<List<String>> docs = Arrays.asList(
+        Collections.<String>emptyList(),
+        Arrays.asList("a", "b", "a"),
+        Collections.<String>emptyList(),
+        Collections.<String>emptyList(),
+        Arrays.asList("c"),
+        Arrays.asList("b", "c"),
+        Collections.<String>emptyList());
+    final Corpus corpus = new Corpus(docs);
+
+    assertEquals(7, corpus.docCount());
+    assertEquals(6, corpus.size());
+    assertEquals(3, corpus.wordCount());
+
+    int i = 0;
+    for (int doc = 0; doc < docs.size(); doc++) {
+      assertEquals(i, corpus.docStart(doc));
+      for (String token : docs.get(doc)) {
+        assertEquals(doc, corpus.doc(i));
+        assertEquals(token, corpus.dictionary().getToken(corpus.word(i)));
+        i++;
+      }
+      assertEquals(i, corpus.docEnd(doc));
+    }
+  }
+
+  @Test
+  public void shouldKeepTopicsWhenReallocated() {
+    final Corpus corpus = new Corpus(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("d")));
+    assertEquals(-1, corpus.topic(0));
+
+    corpus.allocateTopics(4);
+    for (int i = 0; i < corpus.size(); i++) {
+      corpus.setTopic(i, i);
+    }
+    corpus.allocateTopics(300);
+    corpus.setTopic(3, 299);
+
+    assertEquals(0, corpus.topic(0));
+    assertEquals(2, corpus.topic(2));
+    assertEquals(299, corpus.topic(3));
+    assertEquals(299, new Corpus(corpus).topic(3));
+  }
+
+  @Test
+  public void shouldAppendDocumentsAndWords() {
+    final Corpus corpus = new Corpus(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("a")));
+    corpus.allocateTopics(2);
+    corpus.setTopic(2, 1);
+    final Corpus copy = new Corpus(corpus);
+    assertSame(corpus.dictionary(), copy.dictionary());
+    for (int n = 0; n < 300; n++) {
+      corpus.append(Arrays.asList(Collections.<String>emptyList(), Arrays.asList("b", "w" + n)));
+    }
+
+    assertEquals(602, corpus.docCount());
+    assertEquals(302, corpus.wordCount());
+    assertEquals(603, corpus.size());
+    assertEquals(1, corpus.topic(2));
+    assertEquals(0, corpus.topic(602));
+    assertEquals(corpus.docEnd(599), corpus.docStart(601));
+    assertEquals(603, corpus.docOffsets().length);
+    assertEquals("w299", corpus.dictionary().getToken(corpus.word(602)));
+    assertEquals(corpus.word(1), corpus.word(601));
+    assertEquals(601, corpus.doc(602));
+    assertEquals(2, copy.dictionary().size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotSetTopicsBeforeAllocation() {
+    new Corpus(Collections.singletonList(Arrays.asList("a"))).setTopic(0, 0);
+  }
+}
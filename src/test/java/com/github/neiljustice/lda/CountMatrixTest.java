@@ -0,0 +1,67 @@
+package com.github.neiljustice.lda;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountMatrixTest {
+
+  @Test
+  public void shouldPickNarrowestStorage() {
+    assertTrue(CountMatrix.create(10, 5, Character.MAX_VALUE) instanceof CharCountMatrix);
+    assertTrue(CountMatrix.create(10, 5, Character.MAX_VALUE + 1L) instanceof IntCountMatrix);
+  }
+
+  @Test
+  public void shouldHoldCountsUpToMaximum() {
+    final CountMatrix matrix = CountMatrix.create(3, 4, Character.MAX_VALUE);
+    matrix.set(2, 3, Character.MAX_VALUE - 1);
+    assertEquals(Character.MAX_VALUE, matrix.increment(2, 3));
+    matrix.add(2, 3, -5);
+    assertEquals(Character.MAX_VALUE - 5, matrix.get(2, 3));
+    assertEquals(0, matrix.get(2, 2));
+    assertEquals(0, matrix.get(1, 3));
+  }
+
+  @Test
+  public void shouldCopyRows() {
+    final CountMatrix matrix = CountMatrix.create(3, 2, Integer.MAX_VALUE);
+    matrix.set(0, 0, 1);
+    matrix.set(1, 1, 2);
+    matrix.set(2, 0, 3);
+
+    final CountMatrix copy = matrix.emptyCopy();
+    copy.copyRows(matrix, 1, 3);
+    assertEquals(0, copy.get(0, 0));
+    assertEquals(2, copy.get(1, 1));
+    assertEquals(3, copy.get(2, 0));
+  }
+
+  @Test
+  public void shouldGrowInPlaceUntilCountsOutgrowTheStorage() {
+    final CountMatrix matrix = CountMatrix.create(2, 3, 10);
+    matrix.set(1, 2, 7);
+    assertTrue(matrix.grow(new int[5], Character.MAX_VALUE) == matrix);
+    assertEquals(7, matrix.get(1, 2));
+    matrix.increment(6, 2);
+
+    final CountMatrix wider = matrix.grow(new int[1], Character.MAX_VALUE + 1L);
+    assertTrue(wider instanceof IntCountMatrix);
+    assertEquals(8, wider.rows);
+    assertEquals(7, wider.get(1, 2));
+    assertEquals(1, wider.get(6, 2));
+    assertEquals(0, wider.get(7, 2));
+
+    final CountMatrix sparse = CountMatrix.forRuns(new int[]{0, 2, 3}, 100);
+    assertTrue(sparse instanceof SparseCountMatrix);
+    sparse.increment(0, 50);
+    assertTrue(sparse.grow(new int[]{0, 3}, 3) == sparse);
+    sparse.increment(3, 40);
+    sparse.increment(3, 41);
+    sparse.increment(3, 41);
+    assertEquals(1, sparse.get(0, 50));
+    assertEquals(2, sparse.get(3, 41));
+    assertEquals(0, sparse.entryCount(2));
+  }
+}
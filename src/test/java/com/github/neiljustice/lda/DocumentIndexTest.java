@@ -0,0 +1,95 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentIndexTest {
+
+  @Test
+  public void shouldFindTheSameNeighboursAsABruteForceScan() {
+    final Random random = new Random(3);
+    final double[][] theta = new double[10000][12];
+    for (double[] row : theta) {
+      double sum = 0;
+      for (int topic = 0; topic < row.length; topic++) {
+        row[topic] = Math.pow(random.nextDouble(), 4);
+        sum += row[topic];
+      }
+      for (int topic = 0; topic < row.length; topic++) {
+        row[topic] /= sum;
+      }
+    }
+    final DocumentIndex index = new DocumentIndex(theta).withParallelism(3);
+
+    final List<Integer> expected = IntStream.range(0, theta.length).boxed()
+        .filter(doc -> doc != 42)
+        .sorted(Comparator.comparingDouble(doc -> hellinger(theta[42], theta[doc])))
+        .limit(10)
+        .collect(Collectors.toList());
+    final List<DocumentIndex.Neighbour> nearest = index.nearest(42, 10);
+    assertEquals(expected, nearest.stream().map(DocumentIndex.Neighbour::getDoc).collect(Collectors.toList()));
+    for (DocumentIndex.Neighbour neighbour : nearest) {
+      assertEquals(hellinger(theta[42], theta[neighbour.getDoc()]), neighbour.getDistance(), 1e-6);
+    }
+
+    final List<DocumentIndex.Neighbour> itself = index.nearest(theta[42], 3);
+    assertEquals(42, itself.get(0).getDoc());
+    assertEquals(0, itself.get(0).getDistance(), 1e-6);
+    assertEquals(expected.subList(0, 2), itself.subList(1, 3).stream()
+        .map(DocumentIndex.Neighbour::getDoc).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void shouldOnlyScanDocumentsSharingADominantTopic() {
+    final double[][] theta = {
+        {0.7, 0.2, 0.1, 0},
+        {0.6, 0.1, 0.3, 0},
+        {0.1, 0.1, 0.1, 0.7},
+        {0.2, 0.5, 0.2, 0.1},
+    };
+    final DocumentIndex index = new DocumentIndex(theta).withDominantTopics(1);
+    assertEquals(1, index.nearest(0, 5).size());
+    assertEquals(1, index.nearest(0, 5).get(0).getDoc());
+    assertTrue(index.nearest(2, 5).isEmpty());
+
+    index.withDominantTopics(2);
+    final List<Integer> docs = new ArrayList<>();
+    index.nearest(new double[]{0.1, 0.5, 0.4, 0}, 5).forEach(n -> docs.add(n.getDoc()));
+    assertEquals(3, docs.size());
+    assertEquals(3, (int) docs.get(0));
+  }
+
+  @Test
+  public void shouldFindCorpusDocumentsNearANewDocument() {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(100, 100));
+    final LDAModel model = new LDA(corpus, 2).train(200, 10, 5, 20, 10);
+    final DocumentIndex index = new DocumentIndex(model);
+    final double[][] theta = model.getTheta();
+    final int a = corpus.dictionary().getIndex("a");
+    final int letterTopic = model.getPhiView().get(a, 0) > model.getPhiView().get(a, 1) ? 0 : 1;
+
+    assertEquals(corpus.docCount(), index.docCount());
+    final double[] letters = new Inferencer(model).inferText("a b c d a b c d a b");
+    for (DocumentIndex.Neighbour neighbour : index.nearest(letters, 5)) {
+      assertTrue(theta[letterTopic][neighbour.getDoc()] > 0.8);
+    }
+  }
+
+  private static double hellinger(double[] p, double[] q) {
+    double sum = 0;
+    for (int i = 0; i < p.length; i++) {
+      sum += Math.sqrt(p[i] * q[i]);
+    }
+    return Math.sqrt(Math.max(0, 1 - sum));
+  }
+}
@@ -0,0 +1,49 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class GibbsSamplerTest {
+
+  @Test
+  public void shouldNotAllocateDuringCycle() {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    final List<String> docs = new ArrayList<>();
+    for (int doc = 0; doc < 200; doc++) {
+      final StringBuilder builder = new StringBuilder();
+      for (int word = 0; word < 50; word++) {
+        builder.append(" w").append(ThreadLocalRandom.current().nextInt(100));
+      }
+      docs.add(builder.toString());
+    }
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(docs);
+    final LDA lda = new LDA(corpus, 50);
+    final GibbsSampler sampler = new GibbsSampler(lda);
+
+    // first cycle creates this thread's scratch space
+    sampler.cycle();
+    final long threadId = Thread.currentThread().getId();
+    threads.getThreadAllocatedBytes(threadId);
+
+    final long before = threads.getThreadAllocatedBytes(threadId);
+    sampler.cycle();
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    // a double[50] per token would be over 4MB; allow a little for the measurement itself
+    assertTrue("allocated " + allocated + " bytes in a cycle of " + corpus.size() + " tokens",
+        allocated < 1024);
+  }
+}
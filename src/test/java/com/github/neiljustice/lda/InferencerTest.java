@@ -0,0 +1,86 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InferencerTest {
+
+  private static LDAModel model;
+  private static int letterTopic;
+
+  @BeforeClass
+  public static void train() {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(100, 100));
+    model = new LDA(corpus, 2).train(200, 10, 5, 20, 10);
+    final int a = corpus.dictionary().getIndex("a");
+    letterTopic = model.getPhiView().get(a, 0) > model.getPhiView().get(a, 1) ? 0 : 1;
+  }
+
+  @Test
+  public void shouldFindTheTopicsOfNewDocuments() {
+    final Inferencer inferencer = new Inferencer(model);
+
+    final double[] letters = inferencer.inferText("a b c d a b unknown c d");
+    final double[] numbers = inferencer.infer(Arrays.asList("1", "2", "3", "4", "unknown", "3"));
+    assertTrue(letters[letterTopic] > 0.8);
+    assertTrue(numbers[1 - letterTopic] > 0.8);
+    assertEquals(1, letters[0] + letters[1], 1e-9);
+
+    final double[] unknown = inferencer.infer(Collections.singletonList("unknown"));
+    final double[] alpha = model.getAlpha();
+    final double alphaSum = alpha[0] + alpha[1];
+    assertArrayEquals(new double[]{alpha[0] / alphaSum, alpha[1] / alphaSum}, unknown, 1e-9);
+  }
+
+  @Test
+  public void shouldInferABatchInParallel() {
+    final List<String> docs = new ArrayList<>();
+    for (int doc = 0; doc < 500; doc++) {
+      docs.add(doc % 2 == 0 ? "a b c d a b" : "1 2 3 4 3 4");
+    }
+    final double[][] theta = new Inferencer(model).withParallelism(3).withIterations(20).inferText(docs);
+
+    assertEquals(docs.size(), theta.length);
+    for (int doc = 0; doc < docs.size(); doc++) {
+      final int topic = doc % 2 == 0 ? letterTopic : 1 - letterTopic;
+      assertTrue(theta[doc][topic] > 0.7);
+    }
+  }
+
+  @Test
+  public void shouldFitTheSameThetaEveryTimeByVariationalInference() {
+    final Inferencer inferencer = new Inferencer(model).withVariational(1e-6).withIterations(200);
+    final double[] letters = inferencer.inferText("a b c d a b unknown c d");
+    final double[] numbers = inferencer.inferText("1 2 3 4 3");
+    assertTrue(letters[letterTopic] > 0.8);
+    assertTrue(numbers[1 - letterTopic] > 0.8);
+    assertEquals(1, letters[0] + letters[1], 1e-9);
+
+    final List<String> docs = new ArrayList<>();
+    for (int doc = 0; doc < 200; doc++) {
+      docs.add(doc % 2 == 0 ? "a b c d a b unknown c d" : "1 2 3 4 3");
+    }
+    final double[][] theta = new Inferencer(model).withVariational(1e-6).withIterations(200)
+        .withParallelism(3).inferText(docs);
+    for (int doc = 0; doc < docs.size(); doc++) {
+      assertArrayEquals(doc % 2 == 0 ? letters : numbers, theta[doc], 0);
+    }
+  }
+
+  @Test
+  public void shouldComputeDigamma() {
+    assertEquals(-0.5772156649015329, Probability.digamma(1), 1e-10);
+    assertEquals(-1.9635100260214235, Probability.digamma(0.5), 1e-10);
+    assertEquals(4.600161852738087, Probability.digamma(100), 1e-10);
+  }
+}
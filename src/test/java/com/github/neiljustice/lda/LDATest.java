@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -39,6 +40,101 @@ public class LDATest {
     }
   }
 
+  @Test
+  public void shouldKeepCountsConsistentWithSparseDocTopics() {
+    final PreprocessingPipeline pipeline = PreprocessingPipeline.noOpPipeline();
+
+    final List<String> docs = generateDocs(500, 8);
+    corpus = pipeline.preprocess(docs);
+
+    lda = new LDA(corpus, 50);
+    assertTrue(lda.topicsInDoc instanceof SparseCountMatrix);
+    lda.train(50, 10, 5, 20, 10);
+    lda.withSampler(SamplerType.SPARSE).train(50, 10, 5, 20, 10);
+
+    final int[][] topicsInDoc = new int[corpus.docCount()][50];
+    for (int i = 0; i < corpus.size(); i++) {
+      topicsInDoc[corpus.doc(i)][corpus.topic(i)]++;
+    }
+    assertCountsEqual(topicsInDoc, lda.topicsInDoc);
+  }
+
+  @Test
+  public void shouldAddDocumentsToATrainedModel() {
+    final List<String> docs = generateDocs(200, 100);
+    corpus = PreprocessingPipeline.noOpPipeline().preprocess(docs.subList(0, 100));
+    lda = new LDA(corpus, 2).withSampler(SamplerType.SPARSE);
+    lda.train(100, 10, 5, 20, 10);
+
+    final List<List<String>> added = new ArrayList<>();
+    for (String doc : docs.subList(100, 200)) {
+      final List<String> tokens = new ArrayList<>(Arrays.asList(doc.trim().split(" ")));
+      tokens.add("new");
+      added.add(tokens);
+    }
+    lda.addDocuments(added);
+    assertEquals(200, lda.theta()[0].length);
+    assertEquals(corpus.wordCount(), lda.phi().length);
+    assertTrue(lda.theta()[1][150] > 0);
+    assertCountsMatchCorpus(lda, corpus);
+
+    lda.train(200, 10, 5, 20, 10);
+    assertCountsMatchCorpus(lda, corpus);
+    assertEquals(200, lda.theta()[0].length);
+  }
+
+  @Test
+  public void shouldGiveBackPlainCountsAfterHogwild() {
+    final List<String> docs = generateDocs(200, 100);
+    corpus = PreprocessingPipeline.noOpPipeline().preprocess(docs.subList(0, 100));
+    lda = new LDA(corpus, 2).withSampler(SamplerType.HOGWILD).withParallelism(3);
+    lda.train(20, 10, 5, 20, 10);
+    assertTrue(lda.wordsInTopic instanceof AtomicCountMatrix);
+
+    final List<List<String>> added = new ArrayList<>();
+    for (String doc : docs.subList(100, 150)) {
+      added.add(Arrays.asList(doc.trim().split(" ")));
+    }
+    final CountMatrix atomic = lda.wordsInTopic;
+    lda.addDocuments(added);
+    assertTrue(atomic == lda.wordsInTopic);
+    assertCountsMatchCorpus(lda, corpus);
+
+    lda.withSampler(SamplerType.PARALLEL);
+    assertTrue(lda.wordsInTopic instanceof CharCountMatrix);
+    assertCountsMatchCorpus(lda, corpus);
+    lda.train(40, 10, 5, 20, 10);
+    added.clear();
+    for (String doc : docs.subList(150, 200)) {
+      added.add(Arrays.asList(doc.trim().split(" ")));
+    }
+    lda.addDocuments(added);
+    assertTrue(lda.wordsInTopic instanceof CharCountMatrix);
+    assertCountsMatchCorpus(lda, corpus);
+  }
+
+  static void assertCountsMatchCorpus(LDA lda, Corpus corpus) {
+    final int[][] wordsInTopic = new int[corpus.wordCount()][lda.topicCount];
+    final int[][] topicsInDoc = new int[corpus.docCount()][lda.topicCount];
+    final int[] tokensInTopic = new int[lda.topicCount];
+    for (int i = 0; i < corpus.size(); i++) {
+      wordsInTopic[corpus.word(i)][corpus.topic(i)]++;
+      topicsInDoc[corpus.doc(i)][corpus.topic(i)]++;
+      tokensInTopic[corpus.topic(i)]++;
+    }
+    assertArrayEquals(tokensInTopic, lda.tokensInTopic);
+    assertCountsEqual(wordsInTopic, lda.wordsInTopic);
+    assertCountsEqual(topicsInDoc, lda.topicsInDoc);
+  }
+
+  private static void assertCountsEqual(int[][] expected, CountMatrix actual) {
+    for (int row = 0; row < expected.length; row++) {
+      for (int col = 0; col < expected[row].length; col++) {
+        assertEquals(expected[row][col], actual.get(row, col));
+      }
+    }
+  }
+
   @Test
   public void shouldExtractModel() {
     final PreprocessingPipeline pipeline = PreprocessingPipeline.noOpPipeline();
@@ -53,6 +149,27 @@ public class LDATest {
     assertEquals(lda2.perplexity(), lda.perplexity(), 0);
   }
 
+  @Test
+  public void shouldReadPhiAndThetaWithoutCopying() {
+    corpus = PreprocessingPipeline.noOpPipeline().preprocess(generateDocs(100, 100));
+    lda = new LDA(corpus, 2);
+    final LDAModel snapshot = lda.train(100, 10, 5, 20, 10);
+    final LDAModel model = lda.getLiveModel();
+
+    final double[][] phi = lda.phi();
+    final double[][] theta = lda.theta();
+    for (int word = 0; word < corpus.wordCount(); word++) {
+      assertArrayEquals(phi[word], new double[]{model.getPhiView().get(word, 0), model.getPhiView().get(word, 1)}, 0);
+    }
+    assertArrayEquals(theta[1], model.getTheta()[1], 0);
+    assertEquals(LDAUtils.termScore(phi, corpus.dictionary(), 4).toString(), model.termScore(4).toString());
+
+    lda.train(200, 10, 5, 20, 10);
+    assertEquals(lda.phi()[0][0], model.getPhiView().get(0, 0), 0);
+    assertEquals(phi[0][0], snapshot.getPhiView().get(0, 0), 0);
+    assertArrayEquals(theta[1], snapshot.getTheta()[1], 0);
+  }
+
   @Test
   public void shouldGenerateDocs() {
     final PreprocessingPipeline pipeline = PreprocessingPipeline.noOpPipeline();
@@ -105,7 +222,18 @@ public class LDATest {
     }
   }
 
-  private List<String> generateDocs(int count, int maxWords) {
+  static void assertTopicsDetected(List<Topic> topics) {
+    for (Topic topic : topics) {
+      if (topic.getWords().contains("a")) {
+        assertTrue(topic.getWords().toString(), topic.getWords().containsAll(Arrays.asList("a", "b", "c", "d")));
+      }
+      if (topic.getWords().contains("1")) {
+        assertTrue(topic.getWords().toString(), topic.getWords().containsAll(Arrays.asList("1", "2", "3", "4")));
+      }
+    }
+  }
+
+  static List<String> generateDocs(int count, int maxWords) {
     final List<List<String>> types = Arrays.asList(
         Arrays.asList("a", "b", "c", "d", "filler", "filler_"),
         Arrays.asList("1", "2", "3", "4", "filler", "filler_"),
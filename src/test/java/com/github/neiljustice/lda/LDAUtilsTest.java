@@ -0,0 +1,54 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.topic.TermScore;
+import com.github.neiljustice.lda.topic.Topic;
+import com.github.neiljustice.lda.util.Vocabulary;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class LDAUtilsTest {
+
+  @Test
+  public void shouldKeepTheSameTopTermsAsSortingEveryWord() {
+    final Random random = new Random(7);
+    final int wordCount = 3000;
+    final int topicCount = 7;
+    final double[][] phi = new double[wordCount][topicCount];
+    final Vocabulary.Builder dictionary = new Vocabulary.Builder();
+    for (int word = 0; word < wordCount; word++) {
+      dictionary.add("w" + word);
+      for (int topic = 0; topic < topicCount; topic++) {
+        phi[word][topic] = Math.pow(random.nextDouble(), 6) / 100;
+      }
+    }
+    final Vocabulary vocabulary = dictionary.build();
+
+    final List<Topic> topics = LDAUtils.termScore(phi, vocabulary, 25);
+    assertEquals(topicCount, topics.size());
+    final double[] geometricMean = LDAUtils.geometricMean(phi);
+    for (int topic = 0; topic < topicCount; topic++) {
+      final List<TermScore> all = new ArrayList<>();
+      for (int word = 0; word < wordCount; word++) {
+        final double p = phi[word][topic];
+        all.add(new TermScore(vocabulary.getToken(word), p * Math.log(p / geometricMean[word])));
+      }
+      all.sort(TermScore.COMPARATOR);
+      final List<TermScore> expected = all.subList(0, 25);
+
+      assertEquals(topic, topics.get(topic).getIndex());
+      assertEquals(expected.stream().map(TermScore::getTerm).collect(Collectors.toList()),
+          topics.get(topic).getWords());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getScore(), topics.get(topic).getTerms().get(i).getScore(), 1e-12);
+      }
+    }
+
+    assertEquals(wordCount, LDAUtils.termScore(phi, vocabulary, 0).get(3).getTerms().size());
+  }
+}
@@ -0,0 +1,109 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import com.github.neiljustice.lda.util.Vocabulary;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedCorpusTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldHoldTheSameTokensAsTheHeapCorpus() throws Exception {
+    // enough words that the ids need two bytes each
+    final List<List<String>> docs = new ArrayList<>();
+    for (int doc = 0; doc < 50; doc++) {
+      final List<String> document = new ArrayList<>();
+      for (int j = 0; j < doc % 7; j++) {
+        document.add("w" + (doc * 13 + j * 31) % 600);
+      }
+      docs.add(document);
+    }
+    final Corpus corpus = new Corpus(docs);
+    final Path dir = folder.newFolder().toPath();
+    final MappedCorpus mapped = MappedCorpus.write(corpus, dir);
+
+    assertCorpusEqual(corpus, mapped);
+    assertCorpusEqual(corpus, MappedCorpus.open(dir));
+    assertCorpusEqual(corpus, new Corpus(mapped));
+    assertEquals(-1, mapped.topic(0));
+  }
+
+  @Test
+  public void shouldResumeTrainingFromTheMappedTopics() throws Exception {
+    final List<String> docs = LDATest.generateDocs(100, 100);
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(docs);
+    final Path dir = folder.newFolder().toPath();
+
+    final MappedCorpus mapped = MappedCorpus.write(corpus, dir);
+    final LDA lda = new LDA(mapped, 2);
+    lda.train(200, 10, 5, 20, 10);
+    mapped.flush();
+
+    final MappedCorpus reopened = MappedCorpus.open(dir);
+    for (int i = 0; i < mapped.size(); i++) {
+      assertEquals(mapped.topic(i), reopened.topic(i));
+    }
+    final LDA resumed = new LDA(reopened);
+    assertEquals(2, resumed.topicCount);
+    assertArrayEquals(lda.tokensInTopic, resumed.tokensInTopic);
+    for (int word = 0; word < corpus.wordCount(); word++) {
+      for (int topic = 0; topic < 2; topic++) {
+        assertEquals(lda.wordsInTopic.get(word, topic), resumed.wordsInTopic.get(word, topic));
+      }
+    }
+
+    resumed.train(50, 10, 5, 20, 10);
+    LDATest.assertTopicsDetected(resumed.getTopics(4));
+  }
+
+  @Test
+  public void shouldKeepAHashedDictionary() throws Exception {
+    final List<List<String>> docs = Arrays.asList(
+        Arrays.asList("the", "quick", "brown", "fox"), Arrays.asList("fox", "jumps"));
+    final Corpus corpus = new Corpus(docs, Vocabulary.Builder.hashing(4, 2));
+    final Path dir = folder.newFolder().toPath();
+    MappedCorpus.write(corpus, dir);
+
+    final MappedCorpus reopened = MappedCorpus.open(dir);
+    assertEquals(4, reopened.dictionary().hashBits());
+    assertEquals(16, reopened.wordCount());
+    assertEquals(corpus.dictionary().getIndex("fox"), reopened.dictionary().getIndex("fox"));
+    for (int i = 0; i < corpus.size(); i++) {
+      assertEquals(corpus.word(i), reopened.word(i));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotOpenAnUnfinishedCorpus() throws Exception {
+    final Path dir = folder.newFolder().toPath();
+    final MappedCorpus.Writer writer = new MappedCorpus.Writer(dir);
+    writer.add(Arrays.asList("a", "b"));
+    MappedCorpus.open(dir);
+  }
+
+  private static void assertCorpusEqual(Corpus expected, Corpus actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.docCount(), actual.docCount());
+    assertEquals(expected.wordCount(), actual.wordCount());
+    for (int doc = 0; doc < expected.docCount(); doc++) {
+      assertEquals(expected.docStart(doc), actual.docStart(doc));
+      assertEquals(expected.docEnd(doc), actual.docEnd(doc));
+    }
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.dictionary().getToken(expected.word(i)),
+          actual.dictionary().getToken(actual.word(i)));
+    }
+  }
+}
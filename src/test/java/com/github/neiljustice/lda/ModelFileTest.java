@@ -0,0 +1,163 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import com.github.neiljustice.lda.topic.Topic;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModelFileTest {
+
+  /** The float rounding of a quantised row's min and scale, relative to the row max. */
+  private static final double FLOAT_ROUNDING = 0x1p-23;
+
+  private static LDAModel model;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void train() {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(100, 100));
+    model = new LDA(corpus, 2).train(1000, 10, 5, 20, 10);
+  }
+
+  @Test
+  public void shouldRoundTripLosslessly() throws Exception {
+    final Path file = folder.newFile().toPath();
+    model.save(file);
+    final LDAModel read = LDAModel.load(file);
+
+    assertEquals(0, maxError(model.getPhi(), read.getPhi(), 0), 0);
+    assertEquals(0, maxError(model.getTheta(), read.getTheta(), 0), 0);
+    assertArrayEquals(model.getAlpha(), read.getAlpha(), 0);
+    assertEquals(model.getSamples(), read.getSamples());
+    assertEquals(model.getCycles(), read.getCycles());
+    assertEquals(model.getCorpus().size(), read.getCorpus().size());
+    assertEquals(model.getCorpus().topic(7), read.getCorpus().topic(7));
+    assertEquals(new LDA(model).perplexity(), new LDA(read).perplexity(), 0);
+  }
+
+  @Test
+  public void shouldRoundTripEachEncodingWithinItsBound() throws Exception {
+    final double[][] phi = model.getPhi();
+    final double[][] theta = model.getTheta();
+    long lastSize = Long.MAX_VALUE;
+    for (ModelFile.Encoding encoding : ModelFile.Encoding.values()) {
+      final Path file = folder.newFile().toPath();
+      new ModelFile().withEncoding(encoding).write(model, file);
+      final LDAModel read = ModelFile.read(file);
+
+      final double step = encoding.quantised ? 1d / encoding.levels() : 0;
+      final double relative = encoding == ModelFile.Encoding.FLOAT32 ? 1e-7 : 0;
+      assertTrue(encoding.name(), maxError(phi, read.getPhi(), step) <= relative);
+      assertTrue(encoding.name(), maxError(theta, read.getTheta(), step) <= relative);
+      LDATest.assertTopicsDetected(read.termScore(4));
+
+      assertTrue(encoding.name(), Files.size(file) < lastSize);
+      lastSize = Files.size(file);
+    }
+  }
+
+  @Test
+  public void shouldLeaveOutThetaAndDocuments() throws Exception {
+    final Path file = folder.newFile().toPath();
+    new ModelFile().withEncoding(ModelFile.Encoding.QUANTISED_8).withoutTheta().withoutDocuments().write(model, file);
+    final LDAModel read = ModelFile.read(file);
+
+    assertNull(read.getTheta());
+    assertEquals(0, read.getCorpus().size());
+    assertEquals(model.getCorpus().wordCount(), read.getCorpus().wordCount());
+    final List<Topic> topics = read.termScore(4);
+    assertEquals(2, topics.size());
+    LDATest.assertTopicsDetected(topics);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotResumeWithoutTheta() throws Exception {
+    final Path file = folder.newFile().toPath();
+    new ModelFile().withoutTheta().write(model, file);
+    new LDA(ModelFile.read(file));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectOtherFiles() throws Exception {
+    final Path file = folder.newFile().toPath();
+    Files.write(file, new byte[128]);
+    ModelFile.read(file);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectAnUnknownEncoding() throws Exception {
+    final Path file = folder.newFile().toPath();
+    model.save(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      // the encoding follows the magic and the version
+      channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 99), 12);
+    }
+    ModelFile.read(file);
+  }
+
+  @Test
+  public void shouldRoundTripMoreAlphasThanFitInTheBuffer() throws Exception {
+    final int topicCount = 9000;
+    final double[][] phi = new double[3][topicCount];
+    final double[] alpha = new double[topicCount];
+    for (int topic = 0; topic < topicCount; topic++) {
+      alpha[topic] = topic;
+      for (double[] row : phi) {
+        row[topic] = 1d / 3;
+      }
+    }
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(Collections.singletonList("a b c"));
+    final Path file = folder.newFile().toPath();
+    new LDAModel(corpus, phi, null, alpha, topicCount, 1, 1).save(file);
+    final LDAModel read = LDAModel.load(file);
+
+    assertArrayEquals(alpha, read.getAlpha(), 0);
+    assertArrayEquals(phi[2], read.getPhi()[2], 0);
+  }
+
+  /**
+   * The largest error, as a fraction of its row's range for quantised values, less the allowed
+   * half step, or relative to the value itself otherwise.
+   */
+  /**
+   * For a quantised step, how far the worst error exceeds the documented bound, as a
+   * fraction of its row's range; otherwise the worst relative error.
+   */
+  private static double maxError(double[][] expected, double[][] actual, double step) {
+    double max = 0;
+    for (int row = 0; row < expected.length; row++) {
+      double min = Double.POSITIVE_INFINITY;
+      double rowMax = Double.NEGATIVE_INFINITY;
+      for (double value : expected[row]) {
+        min = Math.min(min, value);
+        rowMax = Math.max(rowMax, value);
+      }
+      final double range = rowMax - min;
+      for (int col = 0; col < expected[row].length; col++) {
+        final double error = Math.abs(expected[row][col] - actual[row][col]);
+        max = Math.max(max, step > 0
+            ? (error - FLOAT_ROUNDING * rowMax) / range - step / 2
+            : error / Math.abs(expected[row][col]));
+      }
+    }
+    return max;
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import com.github.neiljustice.lda.util.Vocabulary;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutOfCoreLDATest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldSplitTheCorpusIntoChunksOfWholeDocuments() throws Exception {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(50, 100));
+    final ChunkedCorpus chunked = ChunkedCorpus.write(corpus, folder.newFolder().toPath(), 300);
+
+    assertEquals(corpus.docCount(), chunked.docCount());
+    assertEquals(corpus.wordCount(), chunked.wordCount());
+    assertEquals(corpus.size(), chunked.size());
+    assertTrue(chunked.chunkCount() > 1);
+    int doc = 0;
+    for (int c = 0; c < chunked.chunkCount(); c++) {
+      final ChunkedCorpus.Chunk chunk = chunked.read(c);
+      for (int d = 0; d < chunk.docCount(); d++, doc++) {
+        final int length = corpus.docEnd(doc) - corpus.docStart(doc);
+        assertEquals(length, chunk.docOffsets[d + 1] - chunk.docOffsets[d]);
+        for (int i = 0; i < length; i++) {
+          assertEquals(corpus.word(corpus.docStart(doc) + i), chunk.words[chunk.docOffsets[d] + i]);
+        }
+      }
+    }
+    assertEquals(corpus.docCount(), doc);
+  }
+
+  @Test
+  public void shouldKeepAHashedDictionary() throws Exception {
+    final Path dir = folder.newFolder().toPath();
+    final Vocabulary.Builder dictionary = Vocabulary.Builder.hashing(4, 2);
+    try (ChunkedCorpus.Writer writer = new ChunkedCorpus.Writer(dir, 3, dictionary)) {
+      writer.add(Arrays.asList("the", "quick", "brown", "fox"));
+      writer.add(Arrays.asList("fox", "jumps"));
+    }
+
+    final ChunkedCorpus reopened = ChunkedCorpus.open(dir);
+    assertEquals(4, reopened.dictionary().hashBits());
+    assertEquals(16, reopened.wordCount());
+    final int fox = reopened.dictionary().getIndex("fox");
+    assertEquals(dictionary.getIndex("fox"), fox);
+    assertEquals(fox, reopened.read(1).words[0]);
+  }
+
+  @Test
+  public void shouldDetectTopicsAndResumeFromTheChunks() throws Exception {
+    final Path dir = folder.newFolder().toPath();
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(100, 100));
+    final OutOfCoreLDA lda = new OutOfCoreLDA(ChunkedCorpus.write(corpus, dir, 500), 2);
+    final LDAModel model = lda.train(200);
+    LDATest.assertTopicsDetected(model.termScore(4));
+
+    final OutOfCoreLDA.CycleStats stats = lda.getLastCycleStats();
+    assertTrue(stats.getBytesRead() > corpus.size());
+    assertEquals(corpus.size(), stats.getBytesWritten());
+
+    // the counts rebuilt from the topics on disk are those held at the end of training
+    final LDAModel resumed = new OutOfCoreLDA(ChunkedCorpus.open(dir), 2).getModel();
+    for (int word = 0; word < corpus.wordCount(); word++) {
+      assertArrayEquals(model.getPhi()[word], resumed.getPhi()[word], 0);
+    }
+
+    final double[][] trained = model.getPhi();
+    final LDAModel live = lda.getLiveModel();
+    lda.train(5);
+    for (int word = 0; word < corpus.wordCount(); word++) {
+      assertArrayEquals(trained[word], model.getPhi()[word], 0);
+    }
+    assertArrayEquals(lda.getModel().getPhi()[0], live.getPhi()[0], 0);
+  }
+}
@@ -0,0 +1,116 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The behaviour every sampling engine must share, run once per {@link SamplerType}.
+ */
+@RunWith(Parameterized.class)
+public class SamplerTest {
+
+  @Parameterized.Parameter
+  public SamplerType type;
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> samplers() {
+    final List<Object[]> samplers = new ArrayList<>();
+    for (SamplerType type : SamplerType.values()) {
+      samplers.add(new Object[]{type});
+    }
+    return samplers;
+  }
+
+  @Test
+  public void shouldDetectTopics() {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(separableDocs(100, 100));
+    final LDA lda = lda(corpus, 2);
+    lda.train(1000, 10, 5, 20, 10);
+    LDATest.assertTopicsDetected(lda.getTopics(4));
+    LDATest.assertCountsMatchCorpus(lda, corpus);
+  }
+
+  @Test
+  public void shouldKeepEveryTokenInTheOnlyTopic() {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(50, 20));
+    final LDA lda = lda(corpus, 1);
+    lda.train(20, 10, 5, 20, 10);
+    for (int i = 0; i < corpus.size(); i++) {
+      assertEquals(0, corpus.topic(i));
+    }
+    LDATest.assertCountsMatchCorpus(lda, corpus);
+    assertEquals(1, lda.theta()[0][0], 1e-12);
+  }
+
+  @Test
+  public void shouldAcceptSomeMetropolisHastingsProposals() {
+    assumeTrue(isMetropolisHastings());
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(separableDocs(100, 100));
+    final LDA lda = lda(corpus, 2);
+    final Sampler sampler = type.create(lda);
+    for (int cycle = 0; cycle < 5; cycle++) {
+      sampler.cycle();
+      final double rate = acceptanceRate(sampler);
+      assertTrue(type + " accepted " + rate, rate > 0 && rate <= 1);
+      LDATest.assertCountsMatchCorpus(lda, corpus);
+    }
+  }
+
+  @Test
+  public void shouldAcceptEveryProposalWithOneTopic() {
+    assumeTrue(isMetropolisHastings());
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(50, 20));
+    final Sampler sampler = type.create(lda(corpus, 1));
+    sampler.cycle();
+    assertEquals(1, acceptanceRate(sampler), 0);
+  }
+
+  /**
+   * Documents each drawn from one of the two topics alone, unlike {@link LDATest#generateDocs},
+   * whose mixed documents let a model settle on mixed topics now and then.
+   */
+  private static List<String> separableDocs(int count, int maxWords) {
+    final String[][] topics = {{"a", "b", "c", "d", "filler"}, {"1", "2", "3", "4", "filler"}};
+    final Random random = new Random(count);
+    final List<String> docs = new ArrayList<>();
+    for (int doc = 0; doc < count; doc++) {
+      final String[] topic = topics[doc % 2];
+      final int length = random.nextInt(maxWords - 3) + 3;
+      final StringBuilder builder = new StringBuilder();
+      for (int word = 0; word < length; word++) {
+        builder.append(" ").append(topic[random.nextInt(topic.length)]);
+      }
+      docs.add(builder.toString());
+    }
+    return docs;
+  }
+
+  private LDA lda(Corpus corpus, int topics) {
+    final LDA lda = new LDA(corpus, topics).withSampler(type).withParallelism(3);
+    return type == SamplerType.LIGHT ? lda.withMetropolisHastingsSteps(4) : lda;
+  }
+
+  private boolean isMetropolisHastings() {
+    return type == SamplerType.ALIAS || type == SamplerType.LIGHT || type == SamplerType.WARP;
+  }
+
+  private static double acceptanceRate(Sampler sampler) {
+    if (sampler instanceof AliasSampler) {
+      return ((AliasSampler) sampler).acceptanceRate();
+    }
+    if (sampler instanceof LightSampler) {
+      return ((LightSampler) sampler).acceptanceRate();
+    }
+    return ((WarpSampler) sampler).acceptanceRate();
+  }
+}
@@ -0,0 +1,119 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.util.PackedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Documents per second scored by a {@link ServingModel} shared by 1, 2, 4 ... threads, with
+ * {@link Inferencer} on one thread for comparison.  Not run as part of the tests:
+ * <pre>
+ *   java -cp ... com.github.neiljustice.lda.ServingModelBenchmark [maxThreads] [topics] [words] [docLength] [seconds]
+ * </pre>
+ * The model is random, with each topic's words drawn from a Dirichlet-like spread, so the
+ * numbers measure throughput rather than the quality of the topics found.
+ */
+public final class ServingModelBenchmark {
+  private ServingModelBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    final int topicCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final int wordCount = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+    final int docLength = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+    final double seconds = args.length > 4 ? Double.parseDouble(args[4]) : 5;
+
+    final LDAModel model = randomModel(topicCount, wordCount, new Random(1));
+    final int[][] docs = new int[4096][docLength];
+    final Random random = new Random(2);
+    for (int[] doc : docs) {
+      for (int i = 0; i < docLength; i++) {
+        doc[i] = random.nextInt(wordCount);
+      }
+    }
+
+    long start = System.nanoTime();
+    final ServingModel serving = new ServingModel(model);
+    System.out.printf("K=%d V=%d length=%d: built in %.2fs%n", topicCount, wordCount, docLength,
+        (System.nanoTime() - start) / 1e9);
+
+    final Inferencer inferencer = new Inferencer(model).withParallelism(1);
+    System.out.printf("Inferencer, 1 thread: %.0f docs/s%n", rate(1, seconds, docs, inferencer::infer));
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      System.out.printf("ServingModel, %d threads: %.0f docs/s%n", threads,
+          rate(threads, seconds, docs, serving::infer));
+    }
+  }
+
+  private interface Scorer {
+    double[] infer(int[] words);
+  }
+
+  /**
+   * Each thread scores documents in turn for the given time, after a warm-up of half of it.
+   */
+  private static double rate(int threads, double seconds, int[][] docs, Scorer scorer) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final long warmUpEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+      final long end = warmUpEnd + (long) (seconds * 1e9);
+      final List<Future<Long>> results = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        final int first = thread * 997;
+        results.add(executor.submit(() -> {
+          long scored = 0;
+          for (int doc = first; ; doc++) {
+            final long now = System.nanoTime();
+            if (now > end) {
+              return scored;
+            }
+            scorer.infer(docs[doc % docs.length]);
+            if (now > warmUpEnd) {
+              scored++;
+            }
+          }
+        }));
+      }
+      long scored = 0;
+      for (Future<Long> result : results) {
+        scored += result.get();
+      }
+      return scored / seconds;
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private static LDAModel randomModel(int topicCount, int wordCount, Random random) {
+    final double[][] phi = new double[wordCount][topicCount];
+    for (int topic = 0; topic < topicCount; topic++) {
+      double sum = 0;
+      for (int word = 0; word < wordCount; word++) {
+        // a heavy tail, so each word is likely under a few topics
+        phi[word][topic] = Math.pow(random.nextDouble(), 8);
+        sum += phi[word][topic];
+      }
+      for (int word = 0; word < wordCount; word++) {
+        phi[word][topic] /= sum;
+      }
+    }
+    final Vocabulary.Builder dictionary = new Vocabulary.Builder(wordCount);
+    for (int word = 0; word < wordCount; word++) {
+      dictionary.add("w" + word);
+    }
+    final double[] alpha = new double[topicCount];
+    Arrays.fill(alpha, 0.1);
+    final Corpus corpus = new Corpus(new PackedIntArray(0, 0), new int[]{0}, dictionary.build());
+    return new LDAModel(corpus, phi, null, alpha, topicCount, 1, 1);
+  }
+}
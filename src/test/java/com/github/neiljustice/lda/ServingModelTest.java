@@ -0,0 +1,97 @@
+package com.github.neiljustice.lda;
+
+import com.github.neiljustice.lda.preprocess.PreprocessingPipeline;
+import com.github.neiljustice.lda.util.PackedIntArray;
+import com.github.neiljustice.lda.util.Vocabulary;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ServingModelTest {
+
+  private static LDAModel model;
+  private static int letterTopic;
+
+  @BeforeClass
+  public static void train() {
+    final Corpus corpus = PreprocessingPipeline.noOpPipeline().preprocess(LDATest.generateDocs(100, 100));
+    model = new LDA(corpus, 2).train(200, 10, 5, 20, 10);
+    final int a = corpus.dictionary().getIndex("a");
+    letterTopic = model.getPhiView().get(a, 0) > model.getPhiView().get(a, 1) ? 0 : 1;
+  }
+
+  @Test
+  public void shouldHoldPhiWordMajor() {
+    final ServingModel serving = new ServingModel(model);
+    assertEquals(model.getTopics(), serving.getTopicCount());
+    for (int word = 0; word < serving.getWordCount(); word++) {
+      for (int topic = 0; topic < serving.getTopicCount(); topic++) {
+        assertEquals(model.getPhiView().get(word, topic), serving.phi(word, topic), 1e-6);
+      }
+    }
+    assertEquals(-1, serving.getIndex("unknown"));
+  }
+
+  @Test
+  public void shouldServeManyThreadsAtOnce() throws Exception {
+    final ServingModel serving = new ServingModel(model);
+    final List<String> letters = Arrays.asList("a", "b", "c", "d", "unknown", "a", "b");
+    final List<String> numbers = Arrays.asList("1", "2", "3", "4", "3", "4");
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<Boolean>> results = new ArrayList<>();
+      for (int task = 0; task < 8; task++) {
+        results.add(executor.submit(() -> {
+          for (int doc = 0; doc < 100; doc++) {
+            final double[] theta = serving.infer(doc % 2 == 0 ? letters : numbers);
+            final int topic = doc % 2 == 0 ? letterTopic : 1 - letterTopic;
+            if (!(theta[topic] > 0.7) || Math.abs(theta[0] + theta[1] - 1) > 1e-9) {
+              return false;
+            }
+          }
+          return true;
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldAgreeWithGibbsFoldInOnAmbiguousWords() {
+    // "x" is equally likely under both topics, so only the few "a"s decide the mixture
+    final double[][] phi = {{0.5, 0.01}, {0.01, 0.5}, {0.49, 0.49}};
+    final Vocabulary.Builder dictionary = new Vocabulary.Builder();
+    dictionary.add("a");
+    dictionary.add("1");
+    dictionary.add("x");
+    final Corpus corpus = new Corpus(new PackedIntArray(0, 0), new int[]{0}, dictionary.build());
+    final LDAModel ambiguous = new LDAModel(corpus, phi, null, new double[]{0.1, 0.1}, 2, 1, 1);
+    final int[] doc = new int[40];
+    Arrays.fill(doc, 0, 8, 0);
+    Arrays.fill(doc, 8, 40, 2);
+
+    final ServingModel serving = new ServingModel(ambiguous, 200);
+    final Inferencer inferencer = new Inferencer(ambiguous).withIterations(200);
+    double served = 0;
+    double folded = 0;
+    for (int run = 0; run < 20; run++) {
+      served += serving.infer(doc)[0] / 20;
+      folded += inferencer.infer(doc)[0] / 20;
+    }
+    assertTrue(folded > 0.9);
+    assertEquals(folded, served, 0.03);
+  }
+}
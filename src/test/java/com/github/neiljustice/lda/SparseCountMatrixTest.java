@@ -0,0 +1,65 @@
+package com.github.neiljustice.lda;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparseCountMatrixTest {
+
+  @Test
+  public void shouldChooseSparseStorageForShortRuns() {
+    final int[] shortRuns = {0, 3, 5, 9};
+    final int[] longRuns = {0, 300, 500, 900};
+    assertTrue(CountMatrix.forRuns(shortRuns, 1000) instanceof SparseCountMatrix);
+    assertTrue(CountMatrix.forRuns(longRuns, 10) instanceof CharCountMatrix);
+  }
+
+  @Test
+  public void shouldKeepEntriesSortedByDescendingCount() {
+    final CountMatrix matrix = new SparseCountMatrix(new int[] {0, 6, 8}, 100);
+    matrix.increment(0, 7);
+    matrix.increment(0, 42);
+    matrix.increment(0, 42);
+    matrix.increment(0, 3);
+    matrix.increment(0, 3);
+    matrix.increment(0, 3);
+    matrix.increment(1, 99);
+
+    assertEquals(3, matrix.entryCount(0));
+    assertEquals(3, matrix.entryCol(0, 0));
+    assertEquals(42, matrix.entryCol(0, 1));
+    assertEquals(7, matrix.entryCol(0, 2));
+    assertEquals(3, matrix.entryValue(0, 0));
+    assertEquals(1, matrix.entryCount(1));
+    assertEquals(1, matrix.get(1, 99));
+    assertEquals(0, matrix.get(1, 7));
+
+    assertEquals(0, matrix.decrement(0, 7));
+    assertEquals(2, matrix.entryCount(0));
+    assertEquals(0, matrix.get(0, 7));
+
+    matrix.set(0, 42, 5);
+    assertEquals(42, matrix.entryCol(0, 0));
+    matrix.add(0, 3, -3);
+    assertEquals(1, matrix.entryCount(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectDecrementBelowZero() {
+    new SparseCountMatrix(new int[] {0, 2}, 10).decrement(0, 4);
+  }
+
+  @Test
+  public void shouldCopyRows() {
+    final CountMatrix matrix = new SparseCountMatrix(new int[] {0, 2, 4}, 10);
+    matrix.increment(0, 1);
+    matrix.increment(1, 9);
+    matrix.increment(1, 9);
+
+    final CountMatrix copy = matrix.emptyCopy();
+    copy.copyRows(matrix, 1, 2);
+    assertEquals(0, copy.get(0, 1));
+    assertEquals(2, copy.get(1, 9));
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.neiljustice.lda.preprocess;
+
+import com.github.neiljustice.lda.Corpus;
+import com.github.neiljustice.lda.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PreprocessingPipelineTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> documents = Arrays.asList(
+      "The quick brown fox jumps over the lazy dog.",
+      "",
+      "A quick, QUICK fox; a lazy dog!  See http://example.com/fox for more.",
+      "the and of",
+      "Brown dogs and brown foxes: 42 of them.",
+      "Über-quick fox");
+
+  @Test
+  public void shouldStreamTheSameCorpusAsTheInMemoryPath() throws Exception {
+    final Path file = folder.newFile().toPath();
+    Files.write(file, documents, StandardCharsets.UTF_8);
+
+    assertCorpusEqual(PreprocessingPipeline.noOpPipeline().preprocess(documents),
+        PreprocessingPipeline.noOpPipeline().preprocess(file, StandardCharsets.UTF_8));
+
+    final PreprocessingPipeline pipeline = PreprocessingPipeline.defaultPipeline();
+    pipeline.getPreprocessor().withMinFreq(2).withMinDocFreq(2);
+    final Corpus streamed = pipeline.preprocess(file.toFile());
+    pipeline.setPreprocessor(new Preprocessor().withMinFreq(2).withMinDocFreq(2));
+    assertCorpusEqual(pipeline.preprocess(documents), streamed);
+    assertEquals(Arrays.asList("quick", "brown", "fox", "lazy", "dog"), dictionary(streamed));
+  }
+
+  @Test
+  public void shouldReplaceBytesInvalidInTheCharsetAsReadingTheLinesDoes() throws Exception {
+    final Path file = folder.newFile().toPath();
+    Files.write(file, Arrays.asList("the café is open", "quick fox"), StandardCharsets.ISO_8859_1);
+
+    final Corpus streamed = PreprocessingPipeline.noOpPipeline().preprocess(file.toFile());
+    assertCorpusEqual(PreprocessingPipeline.noOpPipeline().preprocess(FileUtils.readFile(file.toFile())), streamed);
+    assertEquals(6, streamed.size());
+  }
+
+  private static List<String> dictionary(Corpus corpus) {
+    final String[] words = new String[corpus.wordCount()];
+    for (int word = 0; word < words.length; word++) {
+      words[word] = corpus.dictionary().getToken(word);
+    }
+    return Arrays.asList(words);
+  }
+
+  private static void assertCorpusEqual(Corpus expected, Corpus actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.docCount(), actual.docCount());
+    assertEquals(dictionary(expected), dictionary(actual));
+    for (int doc = 0; doc < expected.docCount(); doc++) {
+      assertEquals(expected.docEnd(doc), actual.docEnd(doc));
+    }
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.word(i), actual.word(i));
+    }
+  }
+}
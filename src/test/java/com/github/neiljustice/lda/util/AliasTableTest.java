@@ -0,0 +1,45 @@
+package com.github.neiljustice.lda.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AliasTableTest {
+
+  @Test
+  public void shouldSampleInProportionToWeights() {
+    final double[] weights = {1d, 0d, 3d, 6d, 10d};
+    final AliasTable table = new AliasTable(weights.length);
+    table.build(weights, weights.length);
+
+    final int draws = 200000;
+    final int[] counts = new int[weights.length];
+    for (int i = 0; i < draws; i++) {
+      counts[table.sample()]++;
+    }
+
+    assertEquals(20d, table.mass(), 0d);
+    assertEquals(0, counts[1]);
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(weights[i] / 20d, (double) counts[i] / draws, 0.01);
+    }
+  }
+
+  @Test
+  public void shouldRebuildInPlace() {
+    final AliasTable table = new AliasTable(4);
+    table.build(new double[]{1d, 1d, 1d, 1d}, 4);
+    table.build(new double[]{0d, 5d, 0d}, 3);
+
+    assertEquals(3, table.size());
+    assertEquals(5d, table.weight(1), 0d);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(1, table.sample());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectZeroWeights() {
+    new AliasTable(2).build(new double[]{0d, 0d}, 2);
+  }
+}
@@ -0,0 +1,49 @@
+package com.github.neiljustice.lda.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PackedIntArrayTest {
+
+  @Test
+  public void shouldRoundTripValuesAtEveryWidth() {
+    final Random random = new Random(7);
+    for (int bits = 1; bits <= 31; bits++) {
+      final int maxValue = (int) ((1L << bits) - 1);
+      final int length = 200;
+      final int[] expected = new int[length];
+      final PackedIntArray packed = new PackedIntArray(length, maxValue);
+      assertEquals(bits, packed.bits());
+
+      for (int i = 0; i < length; i++) {
+        expected[i] = random.nextInt(maxValue) + (random.nextBoolean() ? 1 : 0);
+        packed.set(i, expected[i]);
+      }
+      // overwriting must not disturb the neighbours, including across a long boundary
+      for (int i = 0; i < length; i += 3) {
+        expected[i] = maxValue - expected[i];
+        packed.set(i, expected[i]);
+      }
+      for (int i = 0; i < length; i++) {
+        assertEquals(expected[i], packed.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void shouldUseAtLeastOneBit() {
+    assertEquals(1, PackedIntArray.bitsFor(0));
+    assertEquals(1, PackedIntArray.bitsFor(1));
+    assertEquals(2, PackedIntArray.bitsFor(2));
+    assertEquals(10, PackedIntArray.bitsFor(1023));
+    assertEquals(11, PackedIntArray.bitsFor(1024));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectValuesWhichDoNotFit() {
+    new PackedIntArray(10, 5).set(3, 8);
+  }
+}
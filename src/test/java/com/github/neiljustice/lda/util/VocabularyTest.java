@@ -0,0 +1,93 @@
+package com.github.neiljustice.lda.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VocabularyTest {
+
+  private final List<String> words = Arrays.asList("fox", "", "Über", "naïve", "日本語", "🦊",
+      "lone\uD800surrogate", "dog");
+
+  @Test
+  public void shouldLookUpWordsByStringCharSequenceOrBytes() {
+    final Vocabulary.Builder builder = new Vocabulary.Builder(2);
+    for (int i = 0; i < 1000; i++) {
+      for (String word : words) {
+        builder.add(word + (i == 0 ? "" : i));
+      }
+    }
+    assertEquals(0, builder.add("fox"));
+    final Vocabulary vocabulary = builder.build();
+
+    assertEquals(words.size() * 1000, vocabulary.size());
+    for (int word = 0; word < vocabulary.size(); word++) {
+      final String token = vocabulary.getToken(word);
+      final byte[] utf8 = token.getBytes(StandardCharsets.UTF_8);
+      assertEquals(word, vocabulary.getIndex(token));
+      assertEquals(word, vocabulary.getIndex(new StringBuilder(token)));
+      assertEquals(word, vocabulary.getIndex(utf8, 0, utf8.length));
+      assertEquals(utf8.length, vocabulary.utf8Length(word));
+    }
+    assertEquals("🦊", vocabulary.getToken(5));
+    assertEquals("lone?surrogate", vocabulary.getToken(6));
+    assertEquals(-1, vocabulary.getIndex("cat"));
+    assertEquals(-1, vocabulary.getIndex("fo"));
+    assertFalse(vocabulary.contains("foxx"));
+  }
+
+  @Test
+  public void shouldExtendACopyLeavingTheOriginalAsItWas() {
+    final Vocabulary.Builder builder = new Vocabulary.Builder();
+    words.forEach(builder::add);
+    final Vocabulary original = builder.build();
+
+    final Vocabulary.Builder extended = new Vocabulary.Builder(original);
+    assertEquals(3, extended.add("naïve"));
+    assertEquals(words.size(), extended.add("cat"));
+    final Vocabulary copy = extended.build();
+
+    assertTrue(copy.contains("cat"));
+    assertFalse(original.contains("cat"));
+    assertEquals(words.size(), original.size());
+    for (int word = 0; word < original.size(); word++) {
+      assertEquals(original.getToken(word), copy.getToken(word));
+    }
+  }
+
+  @Test
+  public void shouldHashWordsIntoBucketsLabelledByTheirCommonestWords() {
+    final Vocabulary.Builder builder = Vocabulary.Builder.hashing(1, 2);
+    for (int i = 0; i < 1000; i++) {
+      builder.add("w" + i);
+      builder.add("fox");
+    }
+    final Vocabulary vocabulary = builder.build();
+
+    assertEquals(2, vocabulary.size());
+    assertEquals(1, vocabulary.hashBits());
+    final int fox = vocabulary.getIndex("fox");
+    assertEquals(fox, builder.getIndex(new StringBuilder("fox")));
+    final byte[] utf8 = "fox".getBytes(StandardCharsets.UTF_8);
+    assertEquals(fox, vocabulary.getIndex(utf8, 0, utf8.length));
+    assertTrue(vocabulary.contains("never seen"));
+    assertTrue(vocabulary.getToken(fox), vocabulary.getToken(fox).startsWith("fox|w"));
+    assertEquals("#0", Vocabulary.Builder.hashing(1, 0).build().getToken(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectMoreSamplesThanAnArrayCanHold() {
+    Vocabulary.Builder.hashing(30, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectRepeatedWordsFromUtf8() {
+    Vocabulary.fromUtf8("abcab".getBytes(StandardCharsets.UTF_8), new int[]{0, 2, 3, 5});
+  }
+}